@@ -0,0 +1,228 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import org.ligoj.app.plugin.vm.VmNetwork;
+import org.ligoj.app.plugin.vm.model.VmStatus;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Benchmark of {@link AwsVmDecoder} against the former DOM and XPath decoding of a
+ * <code>DescribeInstancesResponse</code>. The peak heap usage of each iteration is reported by the
+ * <code>peakHeapMb</code> counter. Run with the "gc" profiler (<code>-prof gc</code>) to get the allocation rate and
+ * the allocation per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class AwsVmDecoderBenchmark {
+
+	private static final Map<Integer, VmStatus> CODE_TO_STATUS = Map.of(16, VmStatus.POWERED_ON, 80,
+			VmStatus.POWERED_OFF);
+
+	/**
+	 * Amount of described instances.
+	 */
+	@Param({ "1000", "10000" })
+	public int instances;
+
+	/**
+	 * Amount of tags per instance.
+	 */
+	@Param({ "40" })
+	public int tags;
+
+	private static final List<MemoryPoolMXBean> HEAP_POOLS = ManagementFactory.getMemoryPoolMXBeans().stream()
+			.filter(p -> p.getType() == MemoryType.HEAP).toList();
+
+	/**
+	 * Peak heap usage of an iteration. The heap is collected and the peak usage of each heap pool is reset before each
+	 * iteration.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class PeakHeap {
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			System.gc();
+			HEAP_POOLS.forEach(MemoryPoolMXBean::resetPeakUsage);
+		}
+
+		/**
+		 * Return the peak heap usage in MB of the current iteration. The pools do not reach their peak at the same
+		 * time, so the sum of their peaks is an upper bound of the actual peak, still comparable between both
+		 * decoders.
+		 */
+		public long peakHeapMb() {
+			return HEAP_POOLS.stream().mapToLong(p -> p.getPeakUsage().getUsed()).sum() / 1024 / 1024;
+		}
+	}
+
+	private final AwsXml awsXml = new AwsXml();
+
+	private final XPathFactory xpathFactory = XPathFactory.newInstance();
+
+	private Map<String, InstanceType> instanceTypes;
+
+	private byte[] response;
+
+	@Setup
+	public void setup() {
+		final var type = new InstanceType();
+		type.setId("t2.micro");
+		type.setCpu(1);
+		type.setRam(1d);
+		instanceTypes = new HashMap<>(Map.of(type.getId(), type));
+		response = newResponse(instances, tags).getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Return a response similar to the AWS ones.
+	 */
+	static String newResponse(final int instances, final int tags) {
+		final var xml = new StringBuilder(instances * (1500 + tags * 80));
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		xml.append("<DescribeInstancesResponse xmlns=\"http://ec2.amazonaws.com/doc/2016-11-15/\">");
+		xml.append("<requestId>8f7724cf-496f-496e-8fe3-example</requestId><reservationSet>");
+		for (var i = 0; i < instances; i++) {
+			final var ip = "10.0." + (i / 250) + "." + (i % 250);
+			xml.append("<item><reservationId>r-").append(i).append("</reservationId><ownerId>000000000000</ownerId>");
+			xml.append("<groupSet/><instancesSet><item>");
+			xml.append("<instanceId>i-").append(String.format("%08d", i)).append("</instanceId>");
+			xml.append("<imageId>ami-0000000</imageId>");
+			xml.append("<instanceState><code>").append(i % 2 == 0 ? 16 : 80).append("</code><name>running</name>");
+			xml.append("</instanceState><privateDnsName>ip-").append(ip).append(".internal</privateDnsName>");
+			xml.append("<dnsName>ec2-").append(i).append(".amazonaws.com</dnsName><keyName>key</keyName>");
+			xml.append("<instanceType>t2.micro</instanceType><launchTime>2018-03-05T15:30:05.000Z</launchTime>");
+			xml.append("<placement><availabilityZone>eu-west-1b</availabilityZone><groupName/>");
+			xml.append("<tenancy>default</tenancy></placement><monitoring><state>disabled</state></monitoring>");
+			xml.append("<subnetId>subnet-0</subnetId><vpcId>vpc-11112222</vpcId>");
+			xml.append("<privateIpAddress>").append(ip).append("</privateIpAddress>");
+			xml.append("<ipAddress>1.2.").append(i / 250).append('.').append(i % 250).append("</ipAddress>");
+			xml.append("<blockDeviceMapping><item><deviceName>/dev/xvda</deviceName><ebs><volumeId>vol-0</volumeId>");
+			xml.append("<status>attached</status><deleteOnTermination>true</deleteOnTermination></ebs></item>");
+			xml.append("</blockDeviceMapping><tagSet>");
+			for (var t = 0; t < tags; t++) {
+				xml.append("<item><key>tag-").append(t).append("</key><value>value-").append(t).append("</value></item>");
+			}
+			xml.append("<item><key>Name</key><value>instance-").append(i).append("</value></item></tagSet>");
+			xml.append("<networkInterfaceSet><item><networkInterfaceId>eni-0</networkInterfaceId>");
+			xml.append("<privateIpAddress>").append(ip).append("</privateIpAddress><groupSet><item>");
+			xml.append("<groupId>sg-0</groupId><groupName>default</groupName></item></groupSet>");
+			xml.append("<ipv6AddressesSet><item><ipv6Address>2a05:d018::").append(Integer.toHexString(i));
+			xml.append("</ipv6Address></item></ipv6AddressesSet></item></networkInterfaceSet>");
+			xml.append("</item></instancesSet></item>");
+		}
+		return xml.append("</reservationSet></DescribeInstancesResponse>").toString();
+	}
+
+	@Benchmark
+	public List<AwsVm> stax(final PeakHeap peak) throws Exception {
+		final var reader = awsXml.newReader(new ByteArrayInputStream(response));
+		try {
+			return new AwsVmDecoder(instanceTypes, true).decode(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Benchmark
+	public List<AwsVm> dom(final PeakHeap peak) throws Exception {
+		final var items = (NodeList) xpathFactory.newXPath().evaluate(
+				"/DescribeInstancesResponse/reservationSet/item/instancesSet/item",
+				awsXml.parse(new ByteArrayInputStream(response)), XPathConstants.NODESET);
+		return IntStream.range(0, items.getLength()).mapToObj(items::item).map(n -> toVmDetails((Element) n))
+				.toList();
+	}
+
+	/**
+	 * Former DOM based decoding of an instance.
+	 */
+	private AwsVm toVmDetails(final Element record) {
+		final var result = new AwsVm();
+		result.setId(getTagText(record, "instanceId"));
+		result.setName(Objects.toString(getResourceTag(record, "name"), result.getId()));
+		result.setDescription(getResourceTag(record, "description"));
+		final var state = Integer.parseInt(
+				getTagText((Element) record.getElementsByTagName("instanceState").item(0), "code"));
+		result.setStatus(CODE_TO_STATUS.get(state));
+		result.setBusy(Arrays.binarySearch(new int[] { 0, 32, 64 }, state) >= 0);
+		result.setVpc(getTagText(record, "vpcId"));
+		result.setAz(getTagText((Element) record.getElementsByTagName("placement").item(0), "availabilityZone"));
+		final var type = instanceTypes.get(getTagText(record, "instanceType"));
+		result.setRam(Optional.ofNullable(type).map(InstanceType::getRam).map(m -> (int) (m * 1024d)).orElse(0));
+		result.setCpu(Optional.ofNullable(type).map(InstanceType::getCpu).orElse(0));
+		result.setDeployed(result.getStatus() == VmStatus.POWERED_ON);
+
+		final var networks = new ArrayList<VmNetwork>();
+		addNetworkDetails(record, networks, "private", "privateIpAddress", "privateDnsName");
+		addNetworkDetails(record, networks, "public", "ipAddress", "dnsName");
+		try {
+			final var ipv6 = (NodeList) xpathFactory.newXPath().evaluate("networkInterfaceSet/item/ipv6AddressesSet",
+					record, XPathConstants.NODESET);
+			IntStream.range(0, ipv6.getLength()).mapToObj(ipv6::item)
+					.forEach(i -> addNetworkDetails((Element) i, networks, "public", "item", "dnsName"));
+		} catch (final Exception e) {
+			throw new IllegalStateException(e);
+		}
+		result.setNetworks(networks);
+		return result;
+	}
+
+	private void addNetworkDetails(final Element node, final List<VmNetwork> networks, final String type,
+			final String ipAttr, final String dnsAttr) {
+		Optional.ofNullable(getTagText(node, ipAttr))
+				.ifPresent(i -> networks.add(new VmNetwork(type, i, getTagText(node, dnsAttr))));
+	}
+
+	private String getResourceTag(final Element record, final String name) {
+		return Optional.ofNullable(record.getElementsByTagName("tagSet").item(0))
+				.map(n -> ((Element) n).getElementsByTagName("item"))
+				.map(n -> IntStream.range(0, n.getLength()).mapToObj(n::item).map(t -> (Element) t)
+						.filter(t -> getTagText(t, "key").equalsIgnoreCase(name)).map(t -> getTagText(t, "value"))
+						.findFirst().orElse(null))
+				.orElse(null);
+	}
+
+	private String getTagText(final Element element, final String tag) {
+		return Optional.ofNullable(element.getElementsByTagName(tag).item(0)).map(n -> n.getTextContent().trim())
+				.orElse(null);
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Strings;
+import org.ligoj.app.iam.SimpleUser;
+import org.ligoj.app.plugin.vm.snapshot.Snapshot;
+import org.ligoj.app.plugin.vm.snapshot.VolumeSnapshot;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+import static org.ligoj.app.plugin.vmaws.AwsXml.nextChild;
+import static org.ligoj.app.plugin.vmaws.AwsXml.skip;
+import static org.ligoj.app.plugin.vmaws.AwsXml.tags;
+import static org.ligoj.app.plugin.vmaws.AwsXml.text;
+
+/**
+ * Streaming decoder of a <code>DescribeImagesResponse</code>. The AMIs of <code>imagesSet/item</code> are decoded in
+ * one pass, and the search criteria are evaluated as soon as an AMI is read: the creation date and the
+ * {@link Snapshot} bean are only resolved for the matching AMIs. The author is only identified by its login, the user
+ * is resolved by the caller.
+ *
+ * @see <a href="https://docs.aws.amazon.com/AWSEC2/latest/APIReference/API_DescribeImages.html">DescribeImages</a>
+ */
+@Slf4j
+class AwsAmiDecoder {
+
+	/**
+	 * AMI creation date format, such as <code>2018-01-23T16:46:45.000Z</code>. Thread safe.
+	 */
+	private static final DateTimeFormatter CREATION_DATE = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+	/**
+	 * Search criteria. Case is insensitive. When <code>null</code> or empty, all AMIs are returned.
+	 */
+	private final String criteria;
+
+	/**
+	 * Decoder of AMIs.
+	 *
+	 * @param criteria The search criteria. Case is insensitive. The criteria try to match the AMI's identifier, the
+	 *                 AMI's name or one of its volume snapshots identifier. When <code>null</code> or empty, all AMIs
+	 *                 are returned.
+	 */
+	AwsAmiDecoder(final String criteria) {
+		this.criteria = StringUtils.defaultString(criteria);
+	}
+
+	/**
+	 * Check the given AMI properties match to the criteria: name, id or one of its volume's identifiers.
+	 *
+	 * @param id       The AMI identifier.
+	 * @param name     The AMI name. May be <code>null</code>.
+	 * @param volumes  The AMI volume snapshots.
+	 * @param criteria The search criteria. Case is insensitive.
+	 * @return <code>true</code> when the AMI matches.
+	 */
+	static boolean matches(final String id, final String name, final List<VolumeSnapshot> volumes,
+			final String criteria) {
+		return Strings.CI.contains(StringUtils.defaultIfEmpty(name, ""), criteria) || Strings.CI.contains(id, criteria)
+				|| volumes.stream().anyMatch(v -> Strings.CI.contains(v.getId(), criteria));
+	}
+
+	/**
+	 * Decode the matching AMIs of a <code>DescribeImagesResponse</code>.
+	 *
+	 * @param reader The reader positioned on the root element.
+	 * @return The decoded matching AMIs. Empty when the root element is not a <code>DescribeImagesResponse</code>.
+	 * @throws XMLStreamException When the XML content is invalid.
+	 */
+	List<Snapshot> decode(final XMLStreamReader reader) throws XMLStreamException {
+		final var result = new ArrayList<Snapshot>();
+		if ("DescribeImagesResponse".equals(reader.getLocalName())) {
+			while (nextChild(reader)) {
+				if ("imagesSet".equals(reader.getLocalName())) {
+					while (nextChild(reader)) {
+						final var ami = decodeImage(reader);
+						if (ami != null) {
+							result.add(ami);
+						}
+					}
+				} else {
+					skip(reader);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Decode an AMI item.
+	 *
+	 * @return The decoded AMI, or <code>null</code> when it does not match to the criteria.
+	 */
+	private Snapshot decodeImage(final XMLStreamReader reader) throws XMLStreamException {
+		final var image = new Image();
+		while (nextChild(reader)) {
+			switch (reader.getLocalName()) {
+			case "imageId" -> image.id = text(reader);
+			case "name" -> image.name = text(reader);
+			case "description" -> image.description = text(reader);
+			case "imageState" -> image.state = text(reader);
+			case "creationDate" -> image.date = text(reader);
+			case "blockDeviceMapping" -> decodeVolumes(reader, image);
+			case "tagSet" -> image.author = tags(reader).get(VmAwsSnapshotResource.TAG_AUDIT);
+			default -> skip(reader);
+			}
+		}
+		return toSnapshot(image);
+	}
+
+	/**
+	 * Decode the EBS volumes of <code>blockDeviceMapping/item</code>.
+	 */
+	private void decodeVolumes(final XMLStreamReader reader, final Image image) throws XMLStreamException {
+		while (nextChild(reader)) {
+			final var volume = new Volume();
+			while (nextChild(reader)) {
+				switch (reader.getLocalName()) {
+				case "deviceName" -> volume.name = text(reader);
+				case "ebs" -> decodeEbs(reader, volume);
+				default -> skip(reader);
+				}
+			}
+			// Only for EBS
+			if (volume.id != null) {
+				image.volumes.add(volume);
+			}
+		}
+	}
+
+	private void decodeEbs(final XMLStreamReader reader, final Volume volume) throws XMLStreamException {
+		while (nextChild(reader)) {
+			switch (reader.getLocalName()) {
+			case "snapshotId" -> volume.id = text(reader);
+			case "volumeSize" -> volume.size = text(reader);
+			default -> skip(reader);
+			}
+		}
+	}
+
+	/**
+	 * Convert the decoded AMI to a {@link Snapshot} when it matches to the criteria.
+	 */
+	private Snapshot toSnapshot(final Image image) {
+		List<VolumeSnapshot> volumes;
+		Exception invalid = null;
+		try {
+			volumes = image.volumes.stream().map(Volume::toVolumeSnapshot).toList();
+		} catch (final NumberFormatException e) {
+			// Invalid volume size, none of the volumes is kept
+			volumes = Collections.emptyList();
+			invalid = e;
+		}
+		if (!matches(image.id, image.name, volumes, criteria)) {
+			return null;
+		}
+
+		final var snapshot = new Snapshot();
+		snapshot.setId(image.id);
+		snapshot.setName(image.name);
+		snapshot.setDescription(image.description);
+		snapshot.setStatusText(image.state);
+		snapshot.setAvailable("available".equals(snapshot.getStatusText()));
+		snapshot.setPending("pending".equals(snapshot.getStatusText()));
+		if (image.author != null) {
+			final var author = new SimpleUser();
+			author.setId(image.author);
+			snapshot.setAuthor(author);
+		}
+		snapshot.setVolumes(volumes);
+		if (invalid == null) {
+			try {
+				snapshot.setDate(Date.from(OffsetDateTime.parse(image.date, CREATION_DATE).toInstant()));
+			} catch (final RuntimeException e) {
+				invalid = e;
+			}
+		}
+		if (invalid != null) {
+			// Invalid of not correctly managed XML content
+			snapshot.setDate(new Date(0));
+			log.info("Details of AMI {} cannot be fully parsed", snapshot.getId(), invalid);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Decoded values of an AMI.
+	 */
+	private static class Image {
+		private String id;
+		private String name;
+		private String description;
+		private String state;
+		private String date;
+		private String author;
+		private final List<Volume> volumes = new ArrayList<>(2);
+	}
+
+	/**
+	 * Decoded values of an EBS volume.
+	 */
+	private static class Volume {
+		private String name;
+		private String id;
+		private String size;
+
+		private VolumeSnapshot toVolumeSnapshot() {
+			final var snapshot = new VolumeSnapshot();
+			snapshot.setName(name);
+			snapshot.setId(id);
+			snapshot.setSize(Integer.parseInt(Objects.toString(size, "0")));
+			return snapshot;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import lombok.extern.slf4j.Slf4j;
+import org.ligoj.app.plugin.vmaws.http.RevalidatingCache;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.apache.hc.core5.concurrent.DefaultThreadFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * In-memory inventory of the described instances, per account and region. The cached inventories requested within
+ * the time to live are reloaded in background at each refresh interval. A cached inventory is also served while it is
+ * reloaded in background once the refresh interval has elapsed (stale-while-revalidate). An inventory older than the
+ * time to live is no more served, and the least recently used inventories are evicted beyond the maximal size.
+ */
+@Component
+@Slf4j
+public class AwsInventoryCache implements InitializingBean, DisposableBean {
+
+	/**
+	 * Configuration key of the duration, in seconds, after which a served inventory is reloaded in background.
+	 */
+	public static final String CONF_REFRESH = VmAwsPluginResource.KEY + ":inventory-refresh";
+
+	/**
+	 * Configuration key of the duration, in seconds, after which an inventory is no more served.
+	 */
+	public static final String CONF_TTL = VmAwsPluginResource.KEY + ":inventory-ttl";
+
+	/**
+	 * Configuration key of the maximal cached inventories.
+	 */
+	public static final String CONF_SIZE = VmAwsPluginResource.KEY + ":inventory-size";
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	/**
+	 * Cached inventories, indexed.
+	 */
+	private RevalidatingCache<String, AwsVmIndex> inventories;
+
+	/**
+	 * Last loader and last request time of each requested inventory, refreshed in background.
+	 */
+	private final Map<String, Requested> requested = new ConcurrentHashMap<>();
+
+	/**
+	 * Background refresh of the requested inventories. <code>null</code> when disabled.
+	 */
+	private ScheduledExecutorService scheduler;
+
+	private long refresh;
+	private long ttl;
+
+	/**
+	 * A requested inventory.
+	 */
+	private record Requested(Supplier<CompletableFuture<List<AwsVm>>> loader, long requestedAt) {
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		refresh = TimeUnit.SECONDS.toNanos(configuration.get(CONF_REFRESH, 60));
+		ttl = TimeUnit.SECONDS.toNanos(configuration.get(CONF_TTL, 900));
+		inventories = new RevalidatingCache<>(configuration.get(CONF_SIZE, 100));
+		if (refresh > 0) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("aws-inventory", true));
+			scheduler.scheduleWithFixedDelay(this::refreshAll, refresh, refresh, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reload in background the cached inventories requested within the time to live, so they are served without
+	 * waiting for their next request. The inventories no more requested are forgotten.
+	 */
+	void refreshAll() {
+		final var now = System.nanoTime();
+		requested.forEach((key, inventory) -> {
+			if (now - inventory.requestedAt() >= ttl) {
+				requested.remove(key, inventory);
+			} else if (inventories.peek(key) != null) {
+				load(key, inventory.loader());
+			}
+		});
+	}
+
+	/**
+	 * Return the cached inventory. A stale inventory is returned and reloaded in background. A missing or expired
+	 * inventory is loaded in background.
+	 *
+	 * @param key    The account and region key.
+	 * @param loader The inventory loader. The loaded inventory is not stored when <code>null</code>.
+	 * @return The index of the cached inventory, or <code>null</code> when not yet loaded.
+	 */
+	public AwsVmIndex get(final String key, final Supplier<CompletableFuture<List<AwsVm>>> loader) {
+		requested.put(key, new Requested(loader, System.nanoTime()));
+		final var index = inventories.get(key, refresh, ttl, () -> loadIndex(key, loader));
+		return index.isDone() && !index.isCompletedExceptionally() ? index.join() : null;
+	}
+
+	/**
+	 * Load the inventory and store it, or join the in-flight load of the same inventory. The index of a previous
+	 * inventory is updated rather than rebuilt.
+	 *
+	 * @param key    The account and region key.
+	 * @param loader The inventory loader. The loaded inventory is not stored when <code>null</code>.
+	 * @return The future index of the loaded inventory. <code>null</code> when not loaded.
+	 */
+	public CompletableFuture<AwsVmIndex> load(final String key,
+			final Supplier<CompletableFuture<List<AwsVm>>> loader) {
+		return inventories.load(key, () -> loadIndex(key, loader));
+	}
+
+	/**
+	 * Load the inventory and index it.
+	 */
+	private CompletableFuture<AwsVmIndex> loadIndex(final String key,
+			final Supplier<CompletableFuture<List<AwsVm>>> loader) {
+		return loader.get().thenApply(vms -> {
+			if (vms == null) {
+				log.info("AWS inventory cannot be loaded, the previous one is kept");
+				return null;
+			}
+			final var previous = inventories.peek(key);
+			if (previous == null) {
+				return new AwsVmIndex(vms);
+			}
+			previous.update(vms);
+			return previous;
+		});
+	}
+
+	/**
+	 * Remove the inventory, such as after an operation changing the state of its instances. A load in flight is not
+	 * stored.
+	 *
+	 * @param key The account and region key.
+	 */
+	public void invalidate(final String key) {
+		inventories.invalidate(key);
+	}
+
+	/**
+	 * Remove all inventories.
+	 */
+	public void clear() {
+		requested.clear();
+		inventories.clear();
+	}
+
+	/**
+	 * Return the amount of cached inventories.
+	 *
+	 * @return The amount of cached inventories.
+	 */
+	public int size() {
+		return inventories.size();
+	}
+}
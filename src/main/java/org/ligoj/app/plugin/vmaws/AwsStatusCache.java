@@ -0,0 +1,110 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import org.ligoj.app.plugin.vmaws.http.RevalidatingCache;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * In-memory last known virtual machine of the subscriptions, used by their status. The last known virtual machine is
+ * served immediately, and reloaded in background once the time to live has elapsed (stale-while-revalidate). A virtual
+ * machine failing to be reloaded is removed, so the next request reports the failure. A virtual machine older than the
+ * maximal age is no more served, and the least recently used virtual machines are evicted beyond the maximal size.
+ */
+@Component
+public class AwsStatusCache implements InitializingBean {
+
+	/**
+	 * Configuration key of the duration, in seconds, after which a served virtual machine is reloaded in background.
+	 * When zero, the virtual machine is always loaded.
+	 */
+	public static final String CONF_TTL = VmAwsPluginResource.KEY + ":status-ttl";
+
+	/**
+	 * Configuration key of the duration, in seconds, after which a virtual machine is no more served.
+	 */
+	public static final String CONF_MAX_AGE = VmAwsPluginResource.KEY + ":status-max-age";
+
+	/**
+	 * Configuration key of the maximal cached virtual machines.
+	 */
+	public static final String CONF_SIZE = VmAwsPluginResource.KEY + ":status-size";
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	/**
+	 * Last known virtual machines, by subscription.
+	 */
+	private RevalidatingCache<Integer, AwsVm> vms;
+
+	private long ttl;
+	private long maxAge;
+
+	@Override
+	public void afterPropertiesSet() {
+		ttl = TimeUnit.SECONDS.toNanos(configuration.get(CONF_TTL, 60));
+		maxAge = TimeUnit.SECONDS.toNanos(configuration.get(CONF_MAX_AGE, 600));
+		vms = new RevalidatingCache<>(configuration.get(CONF_SIZE, 10000));
+	}
+
+	/**
+	 * Return the last known virtual machine. A stale virtual machine is returned and reloaded in background. A
+	 * missing or expired virtual machine is loaded.
+	 *
+	 * @param subscription The subscription identifier.
+	 * @param loader       The virtual machine loader.
+	 * @return The future virtual machine of the subscription. Already completed when a virtual machine is known.
+	 */
+	public CompletableFuture<AwsVm> get(final int subscription, final Supplier<CompletableFuture<AwsVm>> loader) {
+		if (ttl <= 0) {
+			return load(subscription, loader);
+		}
+		return vms.get(subscription, ttl, maxAge, loader);
+	}
+
+	/**
+	 * Load the virtual machine and store it, or join the in-flight load of the same subscription.
+	 *
+	 * @param subscription The subscription identifier.
+	 * @param loader       The virtual machine loader.
+	 * @return The future loaded virtual machine.
+	 */
+	public CompletableFuture<AwsVm> load(final int subscription, final Supplier<CompletableFuture<AwsVm>> loader) {
+		return vms.load(subscription, loader);
+	}
+
+	/**
+	 * Remove the virtual machine, such as after an operation changing the state of the subscription. A load in flight
+	 * is not stored, and the next request loads the virtual machine again.
+	 *
+	 * @param subscription The subscription identifier.
+	 */
+	public void invalidate(final int subscription) {
+		vms.invalidate(subscription);
+	}
+
+	/**
+	 * Remove all virtual machines.
+	 */
+	public void clear() {
+		vms.clear();
+	}
+
+	/**
+	 * Return the amount of known virtual machines.
+	 *
+	 * @return The amount of known virtual machines.
+	 */
+	public int size() {
+		return vms.size();
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Power state of the virtual machine of a subscription, or the reason it is not available.
+ */
+@Getter
+@AllArgsConstructor
+@JsonInclude(Include.NON_NULL)
+public class AwsSubscriptionState {
+
+	/**
+	 * Subscription identifier.
+	 */
+	private final int subscription;
+
+	/**
+	 * Virtual machine state. <code>null</code> when not available.
+	 */
+	private final AwsVmState vm;
+
+	/**
+	 * Error code when the state is not available: <code>aws-instance-id</code> for an instance not found,
+	 * <code>timeout</code> when not described before the deadline, or <code>aws-failure</code>.
+	 */
+	private final String error;
+}
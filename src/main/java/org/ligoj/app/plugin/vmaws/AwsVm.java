@@ -5,9 +5,14 @@ package org.ligoj.app.plugin.vmaws;
 
 import org.ligoj.app.plugin.vm.execution.Vm;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.Map;
+
 /**
  * AWS instance description.
  */
@@ -26,4 +31,10 @@ public class AwsVm extends Vm {
 	 * Availability Zone : includes region. Sample : eu-west-1b
 	 */
 	private String az;
+
+	/**
+	 * All tags of this instance. Keys are case-insensitive. Only set for the detailed description.
+	 */
+	@JsonInclude(Include.NON_NULL)
+	private Map<String, String> tags;
 }
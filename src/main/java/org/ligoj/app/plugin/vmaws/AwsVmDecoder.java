@@ -0,0 +1,335 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import org.ligoj.app.plugin.vm.VmNetwork;
+import org.ligoj.app.plugin.vm.model.VmStatus;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import static org.ligoj.app.plugin.vmaws.AwsXml.nextChild;
+import static org.ligoj.app.plugin.vmaws.AwsXml.skip;
+import static org.ligoj.app.plugin.vmaws.AwsXml.tags;
+import static org.ligoj.app.plugin.vmaws.AwsXml.text;
+
+/**
+ * Streaming decoder of a <code>DescribeInstancesResponse</code>. The instances of
+ * <code>reservationSet/item/instancesSet/item</code> are built in one pass, and the subtrees not used by the
+ * {@link AwsVm} beans are skipped without being materialized.
+ *
+ * @see <a href="https://docs.aws.amazon.com/AWSEC2/latest/APIReference/API_DescribeInstances.html">DescribeInstances</a>
+ */
+class AwsVmDecoder {
+
+	/**
+	 * EC2 state for terminated.
+	 */
+	private static final int STATE_TERMINATED = 48;
+
+	/**
+	 * VM code to {@link VmStatus} mapping.
+	 */
+	private static final Map<Integer, VmStatus> CODE_TO_STATUS = new HashMap<>();
+	static {
+		CODE_TO_STATUS.put(16, VmStatus.POWERED_ON);
+		CODE_TO_STATUS.put(STATE_TERMINATED, VmStatus.POWERED_OFF); // TERMINATED
+		CODE_TO_STATUS.put(80, VmStatus.POWERED_OFF);
+		CODE_TO_STATUS.put(0, VmStatus.POWERED_ON); // PENDING - BUSY
+		CODE_TO_STATUS.put(32, VmStatus.POWERED_OFF); // SHUTTING_DOWN - BUSY
+		CODE_TO_STATUS.put(64, VmStatus.POWERED_OFF); // STOPPING - BUSY
+	}
+
+	/**
+	 * VM busy AWS state codes
+	 */
+	private static final int[] BUSY_CODES = { 0, 32, 64 };
+
+	private final Map<String, InstanceType> instanceTypes;
+
+	/**
+	 * When <code>true</code>, the network details are decoded.
+	 */
+	private final boolean details;
+
+	/**
+	 * Decoder of instances.
+	 *
+	 * @param instanceTypes The well known instance types.
+	 * @param details       When <code>true</code>, the network details are decoded.
+	 */
+	AwsVmDecoder(final Map<String, InstanceType> instanceTypes, final boolean details) {
+		this.instanceTypes = instanceTypes;
+		this.details = details;
+	}
+
+	/**
+	 * A decoded page of instances.
+	 *
+	 * @param vms       The decoded instances accepted by the matcher.
+	 * @param nextToken The token of the next page. <code>null</code> for the last page.
+	 */
+	record Page(List<AwsVm> vms, String nextToken) {
+	}
+
+	/**
+	 * Decode the instances of a <code>DescribeInstancesResponse</code>.
+	 *
+	 * @param reader The reader positioned on the root element.
+	 * @return The decoded instances. Empty when the root element is not a <code>DescribeInstancesResponse</code>.
+	 * @throws XMLStreamException When the XML content is invalid.
+	 */
+	List<AwsVm> decode(final XMLStreamReader reader) throws XMLStreamException {
+		return decodePage(reader, vm -> true).vms();
+	}
+
+	/**
+	 * Decode a page of <code>DescribeInstancesResponse</code>. The instances not accepted by the matcher are not
+	 * kept.
+	 *
+	 * @param reader  The reader positioned on the root element.
+	 * @param matcher The instance filter.
+	 * @return The decoded page. Empty when the root element is not a <code>DescribeInstancesResponse</code>.
+	 * @throws XMLStreamException When the XML content is invalid.
+	 */
+	Page decodePage(final XMLStreamReader reader, final Predicate<AwsVm> matcher) throws XMLStreamException {
+		final var result = new ArrayList<AwsVm>();
+		String nextToken = null;
+		if ("DescribeInstancesResponse".equals(reader.getLocalName())) {
+			while (nextChild(reader)) {
+				switch (reader.getLocalName()) {
+				case "reservationSet" -> decodeReservations(reader, matcher, result);
+				case "nextToken" -> nextToken = text(reader);
+				default -> skip(reader);
+				}
+			}
+		}
+		return new Page(result, nextToken);
+	}
+
+	/**
+	 * Decode the instance states of a <code>DescribeInstanceStatusResponse</code>.
+	 *
+	 * @param reader The reader positioned on the root element.
+	 * @return The decoded instance states. Empty when the root element is not a
+	 *         <code>DescribeInstanceStatusResponse</code>.
+	 * @throws XMLStreamException When the XML content is invalid.
+	 * @see <a href=
+	 *      "https://docs.aws.amazon.com/AWSEC2/latest/APIReference/API_DescribeInstanceStatus.html">DescribeInstanceStatus</a>
+	 */
+	static List<AwsVmState> decodeStates(final XMLStreamReader reader) throws XMLStreamException {
+		final var result = new ArrayList<AwsVmState>();
+		if ("DescribeInstanceStatusResponse".equals(reader.getLocalName())) {
+			while (nextChild(reader)) {
+				if ("instanceStatusSet".equals(reader.getLocalName())) {
+					while (nextChild(reader)) {
+						result.add(decodeInstanceState(reader));
+					}
+				} else {
+					skip(reader);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Decode an instance status item, only its identifier and its state.
+	 */
+	private static AwsVmState decodeInstanceState(final XMLStreamReader reader) throws XMLStreamException {
+		String id = null;
+		var state = -1;
+		while (nextChild(reader)) {
+			switch (reader.getLocalName()) {
+			case "instanceId" -> id = text(reader);
+			case "instanceState" -> state = decodeState(reader);
+			default -> skip(reader);
+			}
+		}
+		return new AwsVmState(id, CODE_TO_STATUS.get(state), isBusy(state));
+	}
+
+	/**
+	 * Indicate the given state code is a transition state.
+	 */
+	private static boolean isBusy(final int state) {
+		return Arrays.binarySearch(BUSY_CODES, state) >= 0;
+	}
+
+	/**
+	 * Decode <code>reservationSet/item/instancesSet/item</code>.
+	 */
+	private void decodeReservations(final XMLStreamReader reader, final Predicate<AwsVm> matcher,
+			final List<AwsVm> result) throws XMLStreamException {
+		while (nextChild(reader)) {
+			// Reservation item
+			while (nextChild(reader)) {
+				if ("instancesSet".equals(reader.getLocalName())) {
+					while (nextChild(reader)) {
+						final var vm = decodeInstance(reader);
+						if (matcher.test(vm)) {
+							result.add(vm);
+						}
+					}
+				} else {
+					skip(reader);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decode an instance item.
+	 */
+	private AwsVm decodeInstance(final XMLStreamReader reader) throws XMLStreamException {
+		final var result = new AwsVm();
+		final var instance = new Instance();
+		while (nextChild(reader)) {
+			switch (reader.getLocalName()) {
+			case "instanceId" -> result.setId(text(reader));
+			case "instanceType" -> instance.type = text(reader);
+			case "instanceState" -> instance.state = decodeState(reader);
+			case "vpcId" -> result.setVpc(text(reader));
+			case "placement" -> result.setAz(decodeAz(reader));
+			case "tagSet" -> instance.tags = tags(reader);
+			default -> decodeNetwork(reader, instance);
+			}
+		}
+
+		result.setName(Objects.toString(instance.tags.get("name"), result.getId()));
+		result.setDescription(instance.tags.get("description"));
+		result.setStatus(CODE_TO_STATUS.get(instance.state));
+		result.setBusy(isBusy(instance.state));
+		result.setDeployed(result.getStatus() == VmStatus.POWERED_ON);
+
+		// Instance type details
+		final var type = instance.type == null ? null : instanceTypes.get(instance.type);
+		result.setRam(Optional.ofNullable(type).map(InstanceType::getRam).map(m -> (int) (m * 1024d)).orElse(0));
+		result.setCpu(Optional.ofNullable(type).map(InstanceType::getCpu).orElse(0));
+		if (details) {
+			result.setNetworks(instance.toNetworks());
+			result.setTags(instance.tags);
+		}
+		return result;
+	}
+
+	/**
+	 * Decode the network details of an instance, or skip the element.
+	 */
+	private void decodeNetwork(final XMLStreamReader reader, final Instance instance) throws XMLStreamException {
+		if (!details) {
+			skip(reader);
+			return;
+		}
+		switch (reader.getLocalName()) {
+		case "privateIpAddress" -> instance.privateIp = text(reader);
+		case "privateDnsName" -> instance.privateDns = text(reader);
+		case "ipAddress" -> instance.publicIp = text(reader);
+		case "dnsName" -> instance.publicDns = text(reader);
+		case "networkInterfaceSet" -> decodeInterfaces(reader, instance);
+		default -> skip(reader);
+		}
+	}
+
+	/**
+	 * Decode the first IPv6 address of each <code>networkInterfaceSet/item/ipv6AddressesSet</code>.
+	 */
+	private void decodeInterfaces(final XMLStreamReader reader, final Instance instance) throws XMLStreamException {
+		while (nextChild(reader)) {
+			// Network interface item
+			while (nextChild(reader)) {
+				if ("ipv6AddressesSet".equals(reader.getLocalName())) {
+					decodeIpv6(reader, instance);
+				} else {
+					skip(reader);
+				}
+			}
+		}
+	}
+
+	private void decodeIpv6(final XMLStreamReader reader, final Instance instance) throws XMLStreamException {
+		String first = null;
+		while (nextChild(reader)) {
+			// IPv6 item
+			while (nextChild(reader)) {
+				if (first == null && "ipv6Address".equals(reader.getLocalName())) {
+					first = text(reader);
+				} else {
+					skip(reader);
+				}
+			}
+		}
+		if (first != null) {
+			instance.ipv6.add(first);
+		}
+	}
+
+	/**
+	 * Decode <code>instanceState/code</code>.
+	 */
+	private static int decodeState(final XMLStreamReader reader) throws XMLStreamException {
+		var state = -1;
+		while (nextChild(reader)) {
+			if ("code".equals(reader.getLocalName())) {
+				state = Integer.parseInt(text(reader));
+			} else {
+				skip(reader);
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Decode <code>placement/availabilityZone</code>.
+	 */
+	private String decodeAz(final XMLStreamReader reader) throws XMLStreamException {
+		String az = null;
+		while (nextChild(reader)) {
+			if ("availabilityZone".equals(reader.getLocalName())) {
+				az = text(reader);
+			} else {
+				skip(reader);
+			}
+		}
+		return az;
+	}
+
+	/**
+	 * Decoded values of an instance not directly stored in the {@link AwsVm} bean.
+	 */
+	private static class Instance {
+		private String type;
+		private int state = -1;
+		private Map<String, String> tags = Collections.emptyMap();
+		private String privateIp;
+		private String privateDns;
+		private String publicIp;
+		private String publicDns;
+		private final List<String> ipv6 = new ArrayList<>(1);
+
+		/**
+		 * Return the networks: private IP, public IP then IPv6 addresses without DNS, each one being optional.
+		 */
+		private List<VmNetwork> toNetworks() {
+			final var networks = new ArrayList<VmNetwork>();
+			if (privateIp != null) {
+				networks.add(new VmNetwork("private", privateIp, privateDns));
+			}
+			if (publicIp != null) {
+				networks.add(new VmNetwork("public", publicIp, publicDns));
+			}
+			ipv6.forEach(i -> networks.add(new VmNetwork("public", i, null)));
+			return networks;
+		}
+	}
+}
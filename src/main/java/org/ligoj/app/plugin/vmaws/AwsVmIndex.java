@@ -0,0 +1,213 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Strings;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Trigram inverted index of the instance names and identifiers, answering the case-insensitive substring queries. Each
+ * trigram has an ordered posting list of the instances containing it: a query intersects the posting lists of its own
+ * trigrams, starting from the shortest one, and the candidates are returned in the instance order. The index is
+ * updated incrementally: only the added, removed or renamed instances are re-indexed.
+ */
+class AwsVmIndex {
+
+	/**
+	 * Size of the indexed n-grams.
+	 */
+	private static final int N = 3;
+
+	/**
+	 * Instance order, the identifier breaks the ties. Shared by all the searches, so the pages are stable whether the
+	 * inventory is indexed or not.
+	 */
+	static final Comparator<AwsVm> ORDER = Comparator.<AwsVm>naturalOrder().thenComparing(AwsVm::getId);
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Last received instances, by identifier.
+	 */
+	private final Map<String, AwsVm> vms = new HashMap<>();
+
+	/**
+	 * Indexed instances, by identifier. The indexed instance may be an older version of the last received one, with
+	 * the same name.
+	 */
+	private final Map<String, AwsVm> indexed = new HashMap<>();
+
+	/**
+	 * All indexed instances, ordered.
+	 */
+	private final NavigableSet<AwsVm> all = new TreeSet<>(ORDER);
+
+	/**
+	 * Ordered posting lists, by n-gram.
+	 */
+	private final Map<String, NavigableSet<AwsVm>> postings = new HashMap<>();
+
+	/**
+	 * Build the index of the given instances.
+	 *
+	 * @param vms The instances to index.
+	 */
+	AwsVmIndex(final Collection<AwsVm> vms) {
+		update(vms);
+	}
+
+	/**
+	 * Replace the indexed instances by the given ones. Only the added, removed or renamed instances are re-indexed.
+	 *
+	 * @param vms The new instances.
+	 */
+	void update(final Collection<AwsVm> vms) {
+		lock.writeLock().lock();
+		try {
+			final var ids = new HashSet<String>(vms.size());
+			for (final var vm : vms) {
+				ids.add(vm.getId());
+				final var previous = indexed.get(vm.getId());
+				if (previous == null || !Objects.equals(previous.getName(), vm.getName())) {
+					remove(previous);
+					add(vm);
+				}
+				this.vms.put(vm.getId(), vm);
+			}
+			new ArrayList<>(indexed.keySet()).stream().filter(id -> !ids.contains(id)).forEach(id -> {
+				remove(indexed.get(id));
+				this.vms.remove(id);
+			});
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void add(final AwsVm vm) {
+		indexed.put(vm.getId(), vm);
+		all.add(vm);
+		grams(vm).forEach(g -> postings.computeIfAbsent(g, k -> new TreeSet<>(ORDER)).add(vm));
+	}
+
+	private void remove(final AwsVm vm) {
+		if (vm == null) {
+			return;
+		}
+		indexed.remove(vm.getId());
+		all.remove(vm);
+		grams(vm).forEach(g -> {
+			final var posting = postings.get(g);
+			posting.remove(vm);
+			if (posting.isEmpty()) {
+				postings.remove(g);
+			}
+		});
+	}
+
+	/**
+	 * Return the instances whose name or identifier contains the given criteria.
+	 *
+	 * @param criteria The search criteria. Case is insensitive. When empty, all instances are returned.
+	 * @return The matching instances, ordered.
+	 */
+	List<AwsVm> find(final String criteria) {
+		return find(criteria, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Return a page of the instances whose name or identifier contains the given criteria. The candidates are visited
+	 * in order, and the visit stops once the page is complete.
+	 *
+	 * @param criteria The search criteria. Case is insensitive. When empty, all instances are returned.
+	 * @param offset   The amount of first matching instances to skip.
+	 * @param limit    The maximal amount of returned instances.
+	 * @return The matching instances, ordered.
+	 */
+	List<AwsVm> find(final String criteria, final int offset, final int limit) {
+		final var grams = grams(StringUtils.defaultString(criteria), new HashSet<>());
+		lock.readLock().lock();
+		try {
+			final var lists = new ArrayList<NavigableSet<AwsVm>>(grams.size());
+			for (final var gram : grams) {
+				final var posting = postings.get(gram);
+				if (posting == null) {
+					// One of the n-grams is not indexed
+					return List.of();
+				}
+				lists.add(posting);
+			}
+			lists.sort(Comparator.comparingInt(Set::size));
+			final var candidates = lists.isEmpty() ? all : lists.getFirst();
+			final var others = lists.isEmpty() ? lists : lists.subList(1, lists.size());
+
+			// The n-grams may not be contiguous in the candidate, check the whole criteria
+			return candidates.stream().filter(vm -> others.stream().allMatch(l -> l.contains(vm)))
+					.filter(vm -> Strings.CI.contains(vm.getName(), criteria) || Strings.CI.contains(vm.getId(), criteria))
+					.skip(offset).limit(limit).map(vm -> vms.get(vm.getId())).toList();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Return the amount of indexed instances.
+	 *
+	 * @return The amount of indexed instances.
+	 */
+	int size() {
+		lock.readLock().lock();
+		try {
+			return indexed.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Return the n-grams of the name and the identifier of the given instance.
+	 */
+	private Set<String> grams(final AwsVm vm) {
+		final var grams = new HashSet<String>();
+		grams(StringUtils.defaultString(vm.getName()), grams);
+		grams(vm.getId(), grams);
+		return grams;
+	}
+
+	/**
+	 * Add the case-insensitive n-grams of the given text. A text shorter than a n-gram has no n-gram.
+	 */
+	private static Set<String> grams(final String text, final Set<String> grams) {
+		final var normalized = normalize(text);
+		for (var i = 0; i + N <= normalized.length(); i++) {
+			grams.add(normalized.substring(i, i + N));
+		}
+		return grams;
+	}
+
+	/**
+	 * Fold the case char per char, as {@link String#regionMatches(boolean, int, String, int, int)} does, so the length
+	 * is unchanged.
+	 */
+	private static String normalize(final String text) {
+		final var chars = text.toCharArray();
+		for (var i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+		}
+		return new String(chars);
+	}
+}
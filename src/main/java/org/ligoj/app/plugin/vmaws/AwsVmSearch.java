@@ -0,0 +1,39 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a multi-region instance search.
+ */
+@Getter
+@Setter
+public class AwsVmSearch {
+
+	/**
+	 * Matching instances of all the answering regions, ordered.
+	 */
+	private List<AwsVm> vms = Collections.emptyList();
+
+	/**
+	 * Searched regions.
+	 */
+	private List<String> regions = new ArrayList<>();
+
+	/**
+	 * Regions not answering before the deadline. Their instances are not included.
+	 */
+	private List<String> timeouts = new ArrayList<>();
+
+	/**
+	 * Regions whose search has failed. Their instances are not included.
+	 */
+	private List<String> failures = new ArrayList<>();
+}
@@ -0,0 +1,31 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.ligoj.app.plugin.vm.model.VmStatus;
+
+/**
+ * AWS instance power state, without the other details.
+ */
+@Getter
+@AllArgsConstructor
+public class AwsVmState {
+
+	/**
+	 * Instance identifier.
+	 */
+	private final String id;
+
+	/**
+	 * Power status. May be <code>null</code> for an unknown state code.
+	 */
+	private final VmStatus status;
+
+	/**
+	 * When <code>true</code>, the instance is in a transition state.
+	 */
+	private final boolean busy;
+}
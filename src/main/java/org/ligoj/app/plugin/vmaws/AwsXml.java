@@ -0,0 +1,249 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ligoj.bootstrap.core.resource.TechnicalException;
+import org.springframework.stereotype.Component;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * XML parsing of AWS responses streamed from the HTTP connection.
+ */
+@Component
+public class AwsXml {
+
+	/**
+	 * Document builders are not thread safe, but can be reused by the same thread.
+	 */
+	private static final ThreadLocal<DocumentBuilder> BUILDERS = ThreadLocal.withInitial(AwsXml::newDocumentBuilder);
+
+	/**
+	 * XPath objects are not thread safe, but can be reused by the same thread.
+	 */
+	private static final ThreadLocal<XPath> XPATHS = ThreadLocal
+			.withInitial(() -> XPathFactory.newInstance().newXPath());
+
+	/**
+	 * Compiled expressions of the current thread, by source expression. Compiled expressions are not thread safe.
+	 */
+	private static final ThreadLocal<Map<String, XPathExpression>> EXPRESSIONS = ThreadLocal.withInitial(HashMap::new);
+
+	/**
+	 * Stream readers factory, thread safe once configured.
+	 */
+	private static final XMLInputFactory INPUT_FACTORY = newInputFactory();
+
+	private static XMLInputFactory newInputFactory() {
+		final var factory = XMLInputFactory.newFactory();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		return factory;
+	}
+
+	private static DocumentBuilder newDocumentBuilder() {
+		final var factory = DocumentBuilderFactory.newInstance();
+		try {
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+			factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+			factory.setExpandEntityReferences(false);
+			return factory.newDocumentBuilder();
+		} catch (final ParserConfigurationException e) {
+			throw new TechnicalException("XML parser configuration failed", e);
+		}
+	}
+
+	/**
+	 * Parse the given XML stream.
+	 *
+	 * @param input The XML stream.
+	 * @return The parsed document.
+	 * @throws IOException  When the stream cannot be read.
+	 * @throws SAXException When the XML content is invalid.
+	 */
+	public Document parse(final InputStream input) throws SAXException, IOException {
+		final var builder = BUILDERS.get();
+		try {
+			return builder.parse(input);
+		} finally {
+			builder.reset();
+		}
+	}
+
+	/**
+	 * Parse the given XML content.
+	 *
+	 * @param content The XML content.
+	 * @return The parsed document.
+	 * @throws IOException  When the content cannot be read.
+	 * @throws SAXException When the XML content is invalid.
+	 */
+	public Document parse(final String content) throws SAXException, IOException {
+		return parse(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Return the compiled expression for the current thread. The expression is compiled only once per thread, so only
+	 * a bounded set of constant expressions should be used.
+	 *
+	 * @param expression The XPath expression.
+	 * @return The compiled expression, confined to the current thread.
+	 */
+	public XPathExpression getExpression(final String expression) {
+		return EXPRESSIONS.get().computeIfAbsent(expression, e -> {
+			try {
+				return XPATHS.get().compile(e);
+			} catch (final XPathExpressionException ex) {
+				throw new TechnicalException("Invalid XPath expression " + e, ex);
+			}
+		});
+	}
+
+	/**
+	 * Return the nodes matching the given expression.
+	 *
+	 * @param item       The context node or document.
+	 * @param expression The XPath expression, compiled once per thread.
+	 * @return The matching nodes.
+	 */
+	public NodeList getNodes(final Object item, final String expression) {
+		try {
+			return (NodeList) getExpression(expression).evaluate(item, XPathConstants.NODESET);
+		} catch (final XPathExpressionException e) {
+			throw new TechnicalException("XPath evaluation failed " + expression, e);
+		}
+	}
+
+	/**
+	 * Return the trimmed text of the first node matching the given expression.
+	 *
+	 * @param item       The context node or document.
+	 * @param expression The XPath expression, compiled once per thread.
+	 * @return The trimmed text, or <code>null</code> when blank or not found.
+	 */
+	public String getText(final Object item, final String expression) {
+		try {
+			return StringUtils.trimToNull(getExpression(expression).evaluate(item));
+		} catch (final XPathExpressionException e) {
+			throw new TechnicalException("XPath evaluation failed " + expression, e);
+		}
+	}
+
+	/**
+	 * Return a stream reader of the given XML stream.
+	 *
+	 * @param input The XML stream.
+	 * @return The stream reader, positioned on the root element.
+	 * @throws XMLStreamException When the XML content is invalid or empty.
+	 */
+	public XMLStreamReader newReader(final InputStream input) throws XMLStreamException {
+		final var reader = INPUT_FACTORY.createXMLStreamReader(input);
+		while (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+			if (!reader.hasNext()) {
+				throw new XMLStreamException("No root element");
+			}
+			reader.next();
+		}
+		return reader;
+	}
+
+	/**
+	 * Move the reader to the next child element of the current one.
+	 *
+	 * @param reader The reader positioned on the parent start element, or on the end of a previous child.
+	 * @return <code>true</code> when the reader is positioned on a child start element, <code>false</code> when it is
+	 *         positioned on the parent end element.
+	 * @throws XMLStreamException When the XML content is invalid.
+	 */
+	public static boolean nextChild(final XMLStreamReader reader) throws XMLStreamException {
+		while (true) {
+			final var event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				return true;
+			}
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Skip the whole subtree of the current element without materializing it.
+	 *
+	 * @param reader The reader positioned on a start element, and moved to its end element.
+	 * @throws XMLStreamException When the XML content is invalid.
+	 */
+	public static void skip(final XMLStreamReader reader) throws XMLStreamException {
+		var depth = 1;
+		while (depth > 0) {
+			final var event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Decode the <code>key</code>/<code>value</code> items of a <code>tagSet</code> element in one pass.
+	 *
+	 * @param reader The reader positioned on the <code>tagSet</code> start element, and moved to its end element.
+	 * @return The tags. Keys are case-insensitive, and the first tag wins when a key is duplicated.
+	 * @throws XMLStreamException When the XML content is invalid.
+	 */
+	public static Map<String, String> tags(final XMLStreamReader reader) throws XMLStreamException {
+		final var tags = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		while (nextChild(reader)) {
+			String key = null;
+			String value = null;
+			while (nextChild(reader)) {
+				switch (reader.getLocalName()) {
+				case "key" -> key = text(reader);
+				case "value" -> value = text(reader);
+				default -> skip(reader);
+				}
+			}
+			if (key != null && !tags.containsKey(key)) {
+				tags.put(key, value);
+			}
+		}
+		return tags;
+	}
+
+	/**
+	 * Return the trimmed text of the current element.
+	 *
+	 * @param reader The reader positioned on a start element, and moved to its end element.
+	 * @return The trimmed text, or <code>null</code> when blank.
+	 * @throws XMLStreamException When the XML content is invalid or the element is not a leaf.
+	 */
+	public static String text(final XMLStreamReader reader) throws XMLStreamException {
+		return StringUtils.trimToNull(reader.getElementText());
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Bounded selection of the first items of a collection. Only the <code>offset + limit</code> first items are kept in
+ * a heap and then sorted, instead of sorting the whole collection.
+ */
+final class TopK {
+
+	private TopK() {
+		// Utility class
+	}
+
+	/**
+	 * Return a page of the given items, as if they were fully sorted.
+	 *
+	 * @param items  The items to select.
+	 * @param order  The item order.
+	 * @param offset The amount of first items to skip.
+	 * @param limit  The maximal amount of returned items.
+	 * @param <T>    The item type.
+	 * @return The selected items, ordered.
+	 */
+	static <T> List<T> select(final Collection<T> items, final Comparator<? super T> order, final int offset,
+			final int limit) {
+		final var k = (int) Math.min((long) offset + limit, items.size());
+		if (k <= 0) {
+			return List.of();
+		}
+		final List<T> result;
+		if (k == items.size()) {
+			result = new ArrayList<>(items);
+		} else {
+			// Max-heap of the k first items: the root is the first item to be replaced
+			final var heap = new PriorityQueue<T>(k, order.reversed());
+			for (final var item : items) {
+				if (heap.size() < k) {
+					heap.add(item);
+				} else if (order.compare(item, heap.peek()) < 0) {
+					heap.poll();
+					heap.add(item);
+				}
+			}
+			result = new ArrayList<>(heap);
+		}
+		result.sort(order);
+		return List.copyOf(result.subList(Math.min(offset, k), k));
+	}
+}
@@ -3,53 +3,79 @@
  */
 package org.ligoj.app.plugin.vmaws;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityNotFoundException;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.StreamingOutput;
 import jakarta.ws.rs.core.UriInfo;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Strings;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.ligoj.app.api.SubscriptionStatusWithData;
 import org.ligoj.app.dao.NodeRepository;
-import org.ligoj.app.plugin.vm.VmNetwork;
+import org.ligoj.app.dao.ProjectRepository;
+import org.ligoj.app.dao.SubscriptionRepository;
 import org.ligoj.app.plugin.vm.VmResource;
 import org.ligoj.app.plugin.vmaws.auth.AWS4SignatureQuery;
 import org.ligoj.app.plugin.vmaws.auth.AWS4SignatureQuery.AWS4SignatureQueryBuilder;
 import org.ligoj.app.plugin.vmaws.auth.AWS4SignerVMForAuthorizationHeader;
+import org.ligoj.app.plugin.vmaws.http.AwsCircuitBreaker;
+import org.ligoj.app.plugin.vmaws.http.AwsHttpClient;
+import org.ligoj.app.plugin.vmaws.http.AwsHttpPoolStats;
+import org.ligoj.app.plugin.vmaws.http.AwsRateLimiter;
+import org.ligoj.app.plugin.vmaws.http.AwsResponse;
+import org.ligoj.app.plugin.vmaws.http.MicroBatcher;
+import org.ligoj.app.plugin.vmaws.http.ResponseParser;
+import org.ligoj.app.plugin.vmaws.http.SingleFlight;
 import org.ligoj.app.plugin.vm.dao.VmScheduleRepository;
 import org.ligoj.app.plugin.vm.execution.VmExecutionServicePlugin;
 import org.ligoj.app.plugin.vm.model.VmExecution;
 import org.ligoj.app.plugin.vm.model.VmOperation;
 import org.ligoj.app.plugin.vm.model.VmSnapshotStatus;
-import org.ligoj.app.plugin.vm.model.VmStatus;
 import org.ligoj.app.plugin.vm.snapshot.Snapshot;
 import org.ligoj.app.plugin.vm.snapshot.Snapshotting;
 import org.ligoj.app.resource.plugin.AbstractToolPluginResource;
-import org.ligoj.app.resource.plugin.XmlUtils;
 import org.ligoj.bootstrap.core.csv.CsvForBean;
-import org.ligoj.bootstrap.core.curl.CurlProcessor;
 import org.ligoj.bootstrap.core.curl.CurlRequest;
 import org.ligoj.bootstrap.core.resource.BusinessException;
 import org.ligoj.bootstrap.core.security.SecurityHelper;
 import org.ligoj.bootstrap.core.validation.ValidationJsonException;
 import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /**
  * AWS VM resource.
@@ -63,6 +89,16 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 
 	private static final String API_VERSION = "2016-11-15";
 
+	/**
+	 * EC2 service name.
+	 */
+	private static final String EC2 = "ec2";
+
+	/**
+	 * STS service name.
+	 */
+	private static final String STS = "sts";
+
 	/**
 	 * Plug-in key.
 	 */
@@ -93,6 +129,16 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 	 */
 	public static final String PARAMETER_REGION = KEY + ":region";
 
+	/**
+	 * Query parameter of the amount of first matching instances to skip.
+	 */
+	public static final String QUERY_OFFSET = "offset";
+
+	/**
+	 * Query parameter of the maximal amount of returned instances.
+	 */
+	public static final String QUERY_LIMIT = "limit";
+
 	/**
 	 * The EC2 identifier.
 	 */
@@ -103,15 +149,95 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 	 */
 	public static final String CONF_REGION = KEY + ":region";
 
+	/**
+	 * Configuration key of the maximal instances described by a single <code>DescribeInstances</code> call. AWS
+	 * accepts values from 5 to 1000.
+	 */
+	public static final String CONF_PAGE_SIZE = KEY + ":page-size";
+
+	/**
+	 * Configuration key of the regions searched by the multi-region search, separated by a comma. When empty, all the
+	 * regions enabled for the account are searched.
+	 */
+	public static final String CONF_SEARCH_REGIONS = KEY + ":search-regions";
+
+	/**
+	 * Configuration key of the maximal duration, in milliseconds, of the multi-region search.
+	 */
+	public static final String CONF_SEARCH_DEADLINE = KEY + ":search-deadline";
+
+	/**
+	 * Configuration key used for the window collecting the concurrent VM details lookups of an account and a region,
+	 * in milliseconds. When zero, each lookup is executed alone.
+	 */
+	public static final String CONF_BATCH_WINDOW = KEY + ":batch-window";
+
+	/**
+	 * Configuration key used for the maximal amount of accounts and regions described concurrently by the project
+	 * status.
+	 */
+	public static final String CONF_STATUS_PARALLELISM = KEY + ":status-parallelism";
+
+	/**
+	 * Configuration key used for the maximal duration of the project status, in milliseconds.
+	 */
+	public static final String CONF_STATUS_DEADLINE = KEY + ":status-deadline";
+
+	/**
+	 * Newline-delimited JSON media type.
+	 */
+	public static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+
+	/**
+	 * Duration the regions enabled for an account are cached, in nanoseconds.
+	 */
+	private static final long REGIONS_TTL = TimeUnit.HOURS.toNanos(1);
+
+	/**
+	 * Region names of a <code>DescribeRegions</code> response.
+	 */
+	private static final String XPATH_REGIONS = "/*/regionInfo/item/regionName";
+
 	/**
 	 * The default region, fixed for now.
 	 */
 	private static final String DEFAULT_REGION = "eu-west-1";
 
 	/**
-	 * EC2 state for terminated.
+	 * Instance state transitions of a StartInstances, StopInstances or RebootInstances response.
+	 */
+	private static final String XPATH_TRANSITIONS = "/*[contains(local-name(),'InstancesResponse')]/instancesSet/item";
+
+	/**
+	 * Characters allowed in a part of an instance identifier, once lower cased.
+	 */
+	private static final Pattern INSTANCE_ID_PART = Pattern.compile("[a-z0-9-]+");
+
+	/**
+	 * Word of an error message, possibly an instance identifier, even malformed.
+	 */
+	private static final Pattern ERROR_WORD = Pattern.compile("[\\w-]+");
+
+	/**
+	 * Maximal amount of values of a DescribeInstances filter.
 	 */
-	private static final int STATE_TERMINATED = 48;
+	private static final int MAX_FILTER_VALUES = 200;
+
+	/**
+	 * Maximal amount of cased characters of a filter value whose case variants all fit the maximal filter values.
+	 */
+	private static final int MAX_CASED_CHARS = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(MAX_FILTER_VALUES);
+
+	/**
+	 * Maximal amount of instance identifiers of a DescribeInstanceStatus request.
+	 */
+	private static final int MAX_INSTANCE_IDS = 100;
+
+	/**
+	 * Error codes of a request failed by some of its instance identifiers.
+	 */
+	private static final Set<String> INSTANCE_ID_ERRORS = Set.of("InvalidInstanceID.NotFound",
+			"InvalidInstanceID.Malformed");
 
 	/**
 	 * VM operation mapping.
@@ -127,22 +253,6 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 		OPERATION_TO_ACTION.put(VmOperation.REBOOT, "RebootInstances");
 		OPERATION_TO_ACTION.put(VmOperation.RESET, "RebootInstances");
 	}
-	/**
-	 * VM code to {@link VmStatus} mapping.
-	 */
-	private static final Map<Integer, VmStatus> CODE_TO_STATUS = new HashMap<>();
-	static {
-		CODE_TO_STATUS.put(16, VmStatus.POWERED_ON);
-		CODE_TO_STATUS.put(STATE_TERMINATED, VmStatus.POWERED_OFF); // TERMINATED
-		CODE_TO_STATUS.put(80, VmStatus.POWERED_OFF);
-		CODE_TO_STATUS.put(0, VmStatus.POWERED_ON); // PENDING - BUSY
-		CODE_TO_STATUS.put(32, VmStatus.POWERED_OFF); // SHUTTING_DOWN - BUSY
-		CODE_TO_STATUS.put(64, VmStatus.POWERED_OFF); // STOPPING - BUSY
-	}
-	/**
-	 * VM busy AWS state codes
-	 */
-	private static final int[] BUSY_CODES = { 0, 32, 64 };
 
 	@Autowired
 	private AWS4SignerVMForAuthorizationHeader signer;
@@ -156,6 +266,12 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 	@Autowired
 	private NodeRepository nodeRepository;
 
+	@Autowired
+	private ProjectRepository projectRepository;
+
+	@Autowired
+	private SubscriptionRepository subscriptionRepository;
+
 	@Autowired
 	protected VmAwsSnapshotResource snapshotResource;
 
@@ -166,7 +282,30 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 	private VmScheduleRepository vmScheduleRepository;
 
 	@Autowired
-	protected XmlUtils xml;
+	protected AwsHttpClient httpClient;
+
+	@Autowired
+	protected AwsRateLimiter rateLimiter;
+
+	@Autowired
+	protected AwsCircuitBreaker circuitBreaker;
+
+	@Autowired
+	protected AwsXml awsXml;
+
+	@Autowired
+	protected AwsInventoryCache inventoryCache;
+
+	@Autowired
+	protected AwsStatusCache statusCache;
+
+	@Autowired
+	private ObjectProvider<ObjectMapper> objectMapperProvider;
+
+	/**
+	 * JSON writer of the streamed states: the application's mapper.
+	 */
+	private ObjectMapper objectMapper;
 
 	/**
 	 * Well known instance types with details and load on initialization.
@@ -176,45 +315,47 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 	private Map<String, InstanceType> instanceTypes;
 
 	/**
-	 * Fill the given VM networks with its network details.
-	 *
-	 * @param networkNode The network XML node.
-	 * @param networks    The target collection.
+	 * In-flight read only EC2 queries, shared by the concurrent identical queries parsed by the same parser.
+	 */
+	private final SingleFlight<InFlightKey, Object> inFlight = new SingleFlight<>();
+
+	/**
+	 * Concurrent VM details lookups, batched by account and region.
 	 */
-	protected void addNetworkDetails(final Element networkNode, final Collection<VmNetwork> networks) {
-		// Private IP (optional)
-		addNetworkDetails(networkNode, networks, "private", "privateIpAddress", "privateDnsName");
+	private final MicroBatcher<String, String, AwsVm> vmDetailsBatcher = new MicroBatcher<>();
 
-		// Public IP (optional)
-		addNetworkDetails(networkNode, networks, "public", "ipAddress", "dnsName");
+	/**
+	 * Parser of described instances with their network details.
+	 */
+	private final ResponseParser<List<AwsVm>> vmDetailsParser = i -> toVms(i, true);
 
-		// IPv6 (optional)
-		final var xPath = xml.xpathFactory.newXPath();
-		try {
-			final var ipv6 = (NodeList) xPath.evaluate("networkInterfaceSet/item/ipv6AddressesSet", networkNode,
-					XPathConstants.NODESET);
-			IntStream.range(0, ipv6.getLength()).mapToObj(ipv6::item)
-					.forEach(i -> addNetworkDetails((Element) i, networks, "public", "item", "dnsName"));
-		} catch (final XPathExpressionException e) {
-			log.warn("Unable to evaluate IPv6", e);
-		}
+	/**
+	 * Parser of the instance states, shared by the identical in-flight queries.
+	 */
+	private final ResponseParser<List<AwsVmState>> vmStatesParser = this::toVmStates;
+
+	/**
+	 * Regions enabled for the accounts, by account key.
+	 */
+	private final Map<String, Regions> regions = new ConcurrentHashMap<>();
+
+	/**
+	 * Enabled regions of an account, and the time they were retrieved.
+	 */
+	private record Regions(List<String> names, long loadedAt) {
 	}
 
 	/**
-	 * Fill the given VM networks with a specific network details.
+	 * Identity of an in-flight query: the parser is compared by reference.
 	 */
-	private void addNetworkDetails(final Element networkNode, final Collection<VmNetwork> networks, final String type,
-			final String ipAttr, final String dnsAttr) {
-		// When IP is available, add the corresponding network
-		Optional.ofNullable(xml.getTagText(networkNode, ipAttr))
-				.ifPresent(i -> networks.add(new VmNetwork(type, i, xml.getTagText(networkNode, dnsAttr))));
+	private record InFlightKey(String query, ResponseParser<?> parser) {
 	}
 
 	@Override
 	public void afterPropertiesSet() throws IOException {
 		instanceTypes = csvForBean.toBean(InstanceType.class, "csv/instance-type-details.csv").stream()
 				.collect(Collectors.toMap(InstanceType::getId, Function.identity()));
-
+		objectMapper = objectMapperProvider.getIfAvailable(ObjectMapper::new);
 	}
 
 	/**
@@ -231,8 +372,10 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 	@Override
 	public SubscriptionStatusWithData checkSubscriptionStatus(final int subscription, final String node,
 			final Map<String, String> parameters) throws Exception { // NOSONAR
+		// Only the virtual machine is cached, the schedules are counted by each call
+		final var vm = join(statusCache.get(subscription, () -> getVmDetailsAsync(parameters)));
 		final var status = new SubscriptionStatusWithData();
-		status.put("vm", getVmDetails(parameters));
+		status.put("vm", vm);
 		status.put("schedules", vmScheduleRepository.countBySubscription(subscription));
 		return status;
 	}
@@ -245,6 +388,7 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 	@Override
 	public void delete(final VmSnapshotStatus transientTask) throws Exception {
 		snapshotResource.delete(transientTask);
+		statusCache.invalidate(transientTask.getLocked().getId());
 	}
 
 	@Override
@@ -258,6 +402,9 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 		final var response = Optional.ofNullable(OPERATION_TO_ACTION.get(execution.getOperation())).map(
 				a -> processEC2(subscription, p -> "Action=" + a + "&InstanceId.1=" + p.get(PARAMETER_INSTANCE_ID)))
 				.orElse(null);
+		// The cached states are no more accurate
+		inventoryCache.invalidate(getAccountKey(parameters));
+		statusCache.invalidate(subscription);
 		if (!logTransitionState(response)) {
 			// The result is not correct
 			throw new BusinessException("vm-operation-execute");
@@ -265,11 +412,12 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 	}
 
 	/**
-	 * Find the virtual machines matching to the given criteria. Look into virtual machine name and identifier.
+	 * Find the virtual machines matching to the given criteria. Look into virtual machine name and identifier. The
+	 * optional "offset" and "limit" query parameters select a page of the ordered virtual machines.
 	 *
 	 * @param node     the node to be tested with given parameters.
 	 * @param criteria the search criteria. Case is insensitive.
-	 * @param uriInfo  Additional subscription parameters.
+	 * @param uriInfo  Additional subscription parameters, and the optional page.
 	 * @return virtual machines.
 	 * @throws Exception When AWS content cannot be read.
 	 */
@@ -282,17 +430,288 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 		if (nodeRepository.findOneVisible(node, securityHelper.getLogin()) == null) {
 			return Collections.emptyList();
 		}
+		final var query = uriInfo.getQueryParameters();
+		final var offset = Math.max(0, NumberUtils.toInt(query.getFirst(QUERY_OFFSET), 0));
+		final var limit = NumberUtils.toInt(query.getFirst(QUERY_LIMIT), 0);
+		return ListUtils.emptyIfNull(join(findAllByNameOrIdAsync(getSearchParameters(node, uriInfo), criteria, offset,
+				limit > 0 ? limit : Integer.MAX_VALUE, () -> false)));
+	}
 
-		// Merge the node parameters to the node ones
+	/**
+	 * Find the virtual machines matching to the given criteria in several regions concurrently. Look into virtual
+	 * machine name and identifier. The searched regions are the configured ones, or all the regions enabled for the
+	 * account. The regions not answering before the deadline are reported, and the other results are returned. The
+	 * discovery of the regions is included in the deadline, and the searches of the late regions stop requesting pages
+	 * once the deadline is reached.
+	 *
+	 * @param node     the node to be tested with given parameters.
+	 * @param criteria the search criteria. Case is insensitive.
+	 * @param uriInfo  Additional subscription parameters.
+	 * @return virtual machines of all the answering regions, and the searched regions.
+	 * @throws Exception When AWS content cannot be read.
+	 */
+	@GET
+	@Path("{node:service:.+}/{criteria}/all-regions")
+	@Consumes(MediaType.APPLICATION_JSON)
+	public AwsVmSearch findAllByNameOrIdInRegions(@PathParam("node") final String node,
+			@PathParam("criteria") final String criteria, @Context final UriInfo uriInfo) throws Exception {
+		final var result = new AwsVmSearch();
+		// Check the node exists
+		if (nodeRepository.findOneVisible(node, securityHelper.getLogin()) == null) {
+			return result;
+		}
+		final var parameters = getSearchParameters(node, uriInfo);
+		final var deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(configuration.get(CONF_SEARCH_DEADLINE, 5000));
+		final BooleanSupplier expired = () -> System.nanoTime() - deadline >= 0;
+
+		// Search all regions concurrently
+		final var searches = new LinkedHashMap<String, CompletableFuture<List<AwsVm>>>();
+		for (final var region : getSearchRegions(parameters, deadline)) {
+			final var regionParameters = new HashMap<>(parameters);
+			regionParameters.put(PARAMETER_REGION, region);
+			searches.put(region, findAllByNameOrIdAsync(regionParameters, criteria, 0, Integer.MAX_VALUE, expired));
+		}
+		await(searches.values(), deadline);
+
+		// Merge the results of the answering regions
+		final var vms = new ArrayList<AwsVm>();
+		searches.forEach((region, search) -> {
+			result.getRegions().add(region);
+			if (!search.isDone()) {
+				log.info("AWS search of {} in region {} has timed out", criteria, region);
+				result.getTimeouts().add(region);
+			} else if (search.isCompletedExceptionally() || search.resultNow() == null) {
+				log.info("AWS search of {} in region {} has failed", criteria, region,
+						search.isCompletedExceptionally() ? search.exceptionNow() : null);
+				result.getFailures().add(region);
+			} else {
+				vms.addAll(search.resultNow());
+			}
+		});
+		result.setVms(vms.stream().sorted(AwsVmIndex.ORDER).toList());
+		return result;
+	}
+
+	/**
+	 * Wait for the completion of the given futures until the deadline.
+	 *
+	 * @param futures  The futures to wait for. Some of them are not completed when the deadline is reached.
+	 * @param deadline The deadline, from {@link System#nanoTime()}.
+	 */
+	private void await(final Collection<? extends CompletableFuture<?>> futures, final long deadline) {
+		try {
+			CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+					.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		} catch (final TimeoutException | ExecutionException e) {
+			// Partial results, the incomplete futures are handled by the caller
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Return the node parameters completed by the query parameters.
+	 */
+	private Map<String, String> getSearchParameters(final String node, final UriInfo uriInfo) {
 		final Map<String, String> parameters = new HashMap<>(pvResource.getNodeParameters(node));
 		uriInfo.getQueryParameters().forEach((p, v) -> parameters.putIfAbsent(p, v.getFirst()));
+		return parameters;
+	}
+
+	/**
+	 * Return the regions searched by {@link #findAllByNameOrIdInRegions(String, String, UriInfo)}: the configured ones,
+	 * or the regions enabled for the account. When the enabled regions are not retrieved before the deadline, the
+	 * current region only is searched.
+	 *
+	 * @param parameters The node parameters.
+	 * @param deadline   The deadline of the search, from {@link System#nanoTime()}.
+	 * @return The searched regions. Never empty.
+	 */
+	private Collection<String> getSearchRegions(final Map<String, String> parameters, final long deadline) {
+		final var configured = configuration.get(CONF_SEARCH_REGIONS);
+		if (StringUtils.isNotBlank(configured)) {
+			return Arrays.stream(StringUtils.split(configured, ", ")).distinct().toList();
+		}
+		final var key = getAccountKey(parameters);
+		final var cached = regions.get(key);
+		if (cached != null && System.nanoTime() - cached.loadedAt() < REGIONS_TTL) {
+			return cached.names();
+		}
+		final var describe = getDescribeRegionsAsync(parameters);
+		await(List.of(describe), deadline);
+		final var names = describe.isDone() && !describe.isCompletedExceptionally() ? describe.resultNow()
+				: Collections.<String>emptyList();
+		if (names.isEmpty()) {
+			// Not available regions, search the current one only
+			log.info("AWS regions of {} are not available, the current region only is searched",
+					parameters.get(PARAMETER_ACCESS_KEY_ID));
+			return List.of(getRegion(parameters));
+		}
+		regions.put(key, new Regions(names, System.nanoTime()));
+		return names;
+	}
 
-		// Get all VMs and then filter by its name or id
-		// Note : AWS does not support RegExp on tag
-		return this.getDescribeInstances(parameters, "", this::toVm).stream()
-				.filter(vm -> Strings.CI.contains(vm.getName(), criteria)
-						|| Strings.CI.contains(vm.getId(), criteria))
-				.sorted().toList();
+	/**
+	 * Return the regions enabled for the account without blocking the calling thread.
+	 *
+	 * @param parameters The node parameters.
+	 * @return The future region names. Empty when they cannot be retrieved.
+	 * @see <a href="https://docs.aws.amazon.com/AWSEC2/latest/APIReference/API_DescribeRegions.html">DescribeRegions</a>
+	 */
+	private CompletableFuture<List<String>> getDescribeRegionsAsync(final Map<String, String> parameters) {
+		return processEC2Async(parameters, "Action=DescribeRegions", ResponseParser.TEXT)
+				.thenApply(this::toRegions);
+	}
+
+	/**
+	 * Return the region names of a <code>DescribeRegions</code> response.
+	 *
+	 * @param response The response. May be <code>null</code>.
+	 * @return The region names. Empty when they cannot be read.
+	 */
+	private List<String> toRegions(final String response) {
+		if (response == null) {
+			return Collections.emptyList();
+		}
+		try {
+			final var items = awsXml.getNodes(awsXml.parse(response), XPATH_REGIONS);
+			final var names = new ArrayList<String>(items.getLength());
+			for (var i = 0; i < items.getLength(); i++) {
+				names.add(StringUtils.trim(items.item(i).getTextContent()));
+			}
+			return names;
+		} catch (final SAXException | IOException e) {
+			log.info("AWS regions cannot be parsed", e);
+			return Collections.emptyList();
+		}
+	}
+
+	/**
+	 * Find the virtual machines of the region matching to the given criteria without blocking the calling thread. The
+	 * cached inventory is used when available.
+	 *
+	 * @param parameters The node parameters, including the region.
+	 * @param criteria   the search criteria. Case is insensitive.
+	 * @param offset     The amount of first matching virtual machines to skip.
+	 * @param limit      The maximal amount of returned virtual machines.
+	 * @param expired    When <code>true</code>, no more page is requested.
+	 * @return The future ordered virtual machines. <code>null</code> when the instances cannot be described.
+	 */
+	private CompletableFuture<List<AwsVm>> findAllByNameOrIdAsync(final Map<String, String> parameters,
+			final String criteria, final int offset, final int limit, final BooleanSupplier expired) {
+		final var inventory = inventoryCache.get(getAccountKey(parameters),
+				() -> getDescribeInstancesAsync(parameters, "", false, vm -> true, Integer.MAX_VALUE, false, () -> false));
+		if (inventory != null) {
+			// Served from the memory index
+			return CompletableFuture.completedFuture(inventory.find(criteria, offset, limit));
+		}
+
+		// Until the whole inventory is loaded, get the VMs matching the wildcard filters, and then filter by its name
+		// or id
+		final Predicate<AwsVm> matcher = vm -> Strings.CI.contains(vm.getName(), criteria)
+				|| Strings.CI.contains(vm.getId(), criteria);
+		final var variants = toCaseVariants(criteria);
+		if (variants.isEmpty()) {
+			// Note : AWS filters are case-sensitive and do not support RegExp on tag, no part of this criteria can be
+			// pushed to AWS without losing matches, so all instances are described and filtered here
+			return getDescribeInstancesAsync(parameters, "", false, matcher, Integer.MAX_VALUE, true, expired)
+					.thenApply(vms -> vms == null ? null : TopK.select(vms, AwsVmIndex.ORDER, offset, limit));
+		}
+		final var lower = criteria.toLowerCase(Locale.ENGLISH);
+		final var byName = getDescribeInstancesAsync(parameters,
+				toWildcardFilter("tag:Name", variants.toArray(String[]::new)), false, matcher, Integer.MAX_VALUE, true,
+				expired);
+		// Instance identifiers are lower case, no case variant is needed
+		final var byId = INSTANCE_ID_PART.matcher(lower).matches()
+				? getDescribeInstancesAsync(parameters, toWildcardFilter("instance-id", lower), false, matcher,
+						Integer.MAX_VALUE, true, expired)
+				: CompletableFuture.completedFuture(Collections.<AwsVm>emptyList());
+
+		// Merge the VMs matching both the name and the identifier
+		return byName.thenCombine(byId, (n, i) -> n == null || i == null ? null
+				: TopK.select(ListUtils.union(n, i).stream()
+						.collect(Collectors.toMap(AwsVm::getId, Function.identity(), (a, b) -> a)).values(),
+						AwsVmIndex.ORDER, offset, limit));
+	}
+
+	/**
+	 * Return all the case variants of the longest part of the criteria that can be pushed to the case-sensitive AWS
+	 * filters. A name containing the criteria, whatever its case, contains one of these variants, and the remaining
+	 * part of the criteria is checked in memory. The part has at most {@value #MAX_CASED_CHARS} cased characters so its
+	 * variants fit the filter values, and no non ASCII cased character, having more case variants than its lower and
+	 * upper cases.
+	 *
+	 * @param criteria The search criteria.
+	 * @return The case variants of the longest pushable part. Empty when no part can be pushed.
+	 */
+	private List<String> toCaseVariants(final String criteria) {
+		// Find the longest part
+		var start = 0;
+		var cased = 0;
+		var bestStart = 0;
+		var bestEnd = 0;
+		for (var end = 0; end < criteria.length(); end++) {
+			final var c = criteria.charAt(end);
+			if (c > 127 && (isCased(c) || Character.isSurrogate(c))) {
+				// Not part of a pushable part
+				start = end + 1;
+				cased = 0;
+				continue;
+			}
+			if (isCased(c) && ++cased > MAX_CASED_CHARS) {
+				while (!isCased(criteria.charAt(start++))) {
+					// Skip the uncased characters before the first cased one
+				}
+				cased--;
+			}
+			if (end + 1 - start > bestEnd - bestStart) {
+				bestStart = start;
+				bestEnd = end + 1;
+			}
+		}
+
+		// List the case variants of this part
+		var variants = bestEnd == bestStart ? List.<String>of() : List.of("");
+		for (final var c : criteria.substring(bestStart, bestEnd).toCharArray()) {
+			final var suffixes = isCased(c) ? List.of(Character.toLowerCase(c), Character.toUpperCase(c)) : List.of(c);
+			variants = variants.stream().flatMap(v -> suffixes.stream().map(x -> v + x)).toList();
+		}
+		return variants;
+	}
+
+	private boolean isCased(final char c) {
+		return Character.toLowerCase(c) != Character.toUpperCase(c);
+	}
+
+	/**
+	 * Return a filter matching the instances having a value of the given filter name containing one of the given
+	 * values. Values are case-sensitive.
+	 *
+	 * @param name   The filter name.
+	 * @param values The values to be contained. Duplicates are ignored.
+	 * @return The filter query parameters.
+	 */
+	private String toWildcardFilter(final String name, final String... values) {
+		final var filter = new StringBuilder("&Filter.1.Name=").append(name);
+		var index = 0;
+		for (final var value : new LinkedHashSet<>(Arrays.asList(values))) {
+			final var escaped = value.replace("\\", "\\\\").replace("*", "\\*").replace("?", "\\?");
+			filter.append("&Filter.1.Value.").append(++index).append('=')
+					.append(URLEncoder.encode("*" + escaped + "*", StandardCharsets.UTF_8));
+		}
+		return filter.toString();
+	}
+
+	/**
+	 * Return the statistics of the connection pool shared by all AWS calls.
+	 *
+	 * @return The connection pool statistics.
+	 */
+	@GET
+	@Path("http-pool")
+	public AwsHttpPoolStats getHttpPoolStats() {
+		return httpClient.getStats();
 	}
 
 	@Override
@@ -301,48 +720,102 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 	}
 
 	/**
-	 * Get all instances visible for given AWS access key.
+	 * Get the matching instances visible for given AWS access key without blocking the calling thread. The instances
+	 * are described page per page, following the <code>nextToken</code> of each response. Each page is decoded while
+	 * it is received, without holding the raw page, and no more page is requested once enough instances are matching.
 	 *
 	 * @param parameters Subscription parameters.
-	 * @param filter     Optional instance identifier to find. For sample :
-	 *                   "&Filter.1.Name=instance-id&Filter.1.Value.1=my_instance_id"
-	 * @param parser     The mapper from {@link Element} to {@link AwsVm}.
-	 * @return The matching instances.
-	 * @throws Exception When AWS content cannot be read.
+	 * @param filter     Optional instance filter. For sample : "&Filter.1.Name=tag:Name&Filter.1.Value.1=my_name"
+	 * @param details    When <code>true</code>, the network details are decoded.
+	 * @param matcher    The instance filter applied to the decoded instances.
+	 * @param limit      The maximal matching instances to return.
+	 * @return The future matching instances, in the order of the pages. When a next page cannot be retrieved, the
+	 *         instances of the previous pages only are returned. <code>null</code> when the first page cannot be
+	 *         retrieved.
 	 */
-	private List<AwsVm> getDescribeInstances(final Map<String, String> parameters, final String filter,
-			final Function<Element, AwsVm> parser) throws Exception {
-		var query = "Action=DescribeInstances";
-		if (StringUtils.isNotEmpty(filter)) {
-			query += filter;
-		}
-		final var response = StringUtils.defaultIfEmpty(processEC2(parameters, query),
-				"<DescribeInstancesResponse><reservationSet><item><instancesSet></instancesSet></item></reservationSet></DescribeInstancesResponse>");
-		return toVms(response, parser);
+	protected CompletableFuture<List<AwsVm>> getDescribeInstancesAsync(final Map<String, String> parameters,
+			final String filter, final boolean details, final Predicate<AwsVm> matcher, final int limit) {
+		return getDescribeInstancesAsync(parameters, filter, details, matcher, limit, true, () -> false);
 	}
 
-	private int getEc2State(final Element record) {
-		return getEc2State(record, "instanceState");
+	/**
+	 * Get the matching instances page per page.
+	 *
+	 * @param partial When <code>true</code>, a next page that cannot be retrieved ends the iteration with the
+	 *                instances of the previous pages. Otherwise, the future is completed with <code>null</code>. A
+	 *                first page that cannot be retrieved always completes the future with <code>null</code>.
+	 * @param expired When <code>true</code>, no more page is requested and the instances of the previous pages are
+	 *                returned.
+	 * @see #getDescribeInstancesAsync(Map, String, boolean, Predicate, int)
+	 */
+	private CompletableFuture<List<AwsVm>> getDescribeInstancesAsync(final Map<String, String> parameters,
+			final String filter, final boolean details, final Predicate<AwsVm> matcher, final int limit,
+			final boolean partial, final BooleanSupplier expired) {
+		final var query = getDescribeInstancesQuery(filter) + "&MaxResults="
+				+ configuration.get(CONF_PAGE_SIZE, 1000);
+		final var decoder = new AwsVmDecoder(instanceTypes, details);
+		return getDescribeInstancesPage(parameters, query, null, decoder, matcher, limit, partial, expired,
+				new ArrayList<>());
 	}
 
-	private int getEc2State(final Element record, final String tag) {
-		final var stateElement = (Element) record.getElementsByTagName(tag).item(0);
-		return Integer.parseInt(xml.getTagText(stateElement, "code"));
+	/**
+	 * Describe a page of instances, decoded while it is received, and continue with the next page.
+	 *
+	 * @param token The token of this page. <code>null</code> for the first page.
+	 * @return The future matching instances of this page and the next ones. <code>null</code> when the first page
+	 *         cannot be retrieved.
+	 */
+	private CompletableFuture<List<AwsVm>> getDescribeInstancesPage(final Map<String, String> parameters,
+			final String query, final String token, final AwsVmDecoder decoder, final Predicate<AwsVm> matcher,
+			final int limit, final boolean partial, final BooleanSupplier expired, final List<AwsVm> result) {
+		final var pageQuery = token == null ? query
+				: query + "&NextToken=" + URLEncoder.encode(token, StandardCharsets.UTF_8);
+		return processEC2Async(parameters, pageQuery, input -> {
+			final var reader = awsXml.newReader(input);
+			try {
+				return decoder.decodePage(reader, matcher);
+			} finally {
+				reader.close();
+			}
+		}).thenCompose(page -> {
+			if (page == null) {
+				return CompletableFuture.completedFuture(partial && token != null ? result : null);
+			}
+			page.vms().stream().limit((long) limit - result.size()).forEach(result::add);
+			if (page.nextToken() == null || result.size() >= limit || expired.getAsBoolean()) {
+				return CompletableFuture.completedFuture(result);
+			}
+			return getDescribeInstancesPage(parameters, query, page.nextToken(), decoder, matcher, limit, partial,
+					expired, result);
+		});
 	}
 
-	@Override
-	public String getKey() {
-		return VmAwsPluginResource.KEY;
+	private String getDescribeInstancesQuery(final String filter) {
+		return "Action=DescribeInstances" + StringUtils.defaultString(filter);
 	}
 
 	/**
-	 * Return the tag "name" value or <code>null</code>
+	 * Wait for the given future and return its result. The cause of a failed future is thrown as is.
 	 *
-	 * @param record The XML element.
-	 * @return The "name" tag text value of <code>null</code> when not found.
+	 * @param future The future to wait.
+	 * @param <T>    The result type.
+	 * @return The future result.
+	 * @throws Exception The cause of the failure.
 	 */
-	private String getName(final Element record) {
-		return getResourceTag(record, "name");
+	protected static <T> T join(final CompletableFuture<T> future) throws Exception {
+		try {
+			return future.join();
+		} catch (final CompletionException e) {
+			if (e.getCause() instanceof Exception cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+
+	@Override
+	public String getKey() {
+		return VmAwsPluginResource.KEY;
 	}
 
 	/**
@@ -356,26 +829,360 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 				.orElseGet(() -> configuration.get(CONF_REGION, DEFAULT_REGION));
 	}
 
+	@Override
+	public AwsVm getVmDetails(final Map<String, String> parameters) throws Exception {
+		return join(getVmDetailsAsync(parameters));
+	}
+
 	/**
-	 * Return the resource tag value or <code>null</code>
+	 * Return the details of the virtual machine of a subscription, without blocking. The lookup is batched with the
+	 * concurrent lookups of the same account and region.
+	 *
+	 * @param parameters The subscription parameters.
+	 * @return The virtual machine details. Completed with a {@link ValidationJsonException} when the instance is not
+	 *         found.
 	 */
-	private String getResourceTag(final Element record, final String name) {
-		return Optional.ofNullable(record.getElementsByTagName("tagSet").item(0))
-				.map(n -> ((Element) n).getElementsByTagName("item"))
-				.map(n -> IntStream.range(0, n.getLength()).mapToObj(n::item).map(t -> (Element) t)
-						.filter(t -> xml.getTagText(t, "key").equalsIgnoreCase(name))
-						.map(t -> xml.getTagText(t, "value")).findFirst().orElse(null))
-				.orElse(null);
+	protected CompletableFuture<AwsVm> getVmDetailsAsync(final Map<String, String> parameters) {
+		final var instanceId = parameters.get(PARAMETER_INSTANCE_ID);
+
+		// Get the VM if exists, along with the concurrent lookups of the same account and region
+		final var window = configuration.get(CONF_BATCH_WINDOW, 10);
+		final CompletableFuture<AwsVm> vm;
+		if (window > 0) {
+			vm = vmDetailsBatcher.submit(getAccountKey(parameters), instanceId, window,
+					ids -> getVmDetailsAsync(parameters, ids));
+		} else {
+			vm = getVmDetailsAsync(parameters, List.of(instanceId)).thenApply(v -> v.get(instanceId));
+		}
+		return vm.thenApply(v -> Optional.ofNullable(v)
+				.orElseThrow(() -> new ValidationJsonException(PARAMETER_INSTANCE_ID, "aws-instance-id", instanceId)));
 	}
 
-	@Override
-	public AwsVm getVmDetails(final Map<String, String> parameters) throws Exception {
+	/**
+	 * Return the details of the virtual machines of several subscriptions. The subscriptions sharing the same
+	 * credentials and region are described by a single DescribeInstances request per chunk of instance identifiers.
+	 *
+	 * @param subscriptions The subscription identifiers.
+	 * @return The virtual machine details of each subscription. A subscription whose instance is not found completes
+	 *         with the same {@link ValidationJsonException} than {@link #getVmDetails(Map)}.
+	 */
+	public Map<Integer, CompletableFuture<AwsVm>> getVmDetailsAsync(final Collection<Integer> subscriptions) {
+		return toSubscriptions(subscriptions, this::getVmDetailsAsync);
+	}
+
+	/**
+	 * Return the power states of the virtual machines of several subscriptions, without the other details. The
+	 * subscriptions sharing the same credentials and region are described by a single DescribeInstanceStatus request
+	 * per chunk of instance identifiers.
+	 *
+	 * @param subscriptions The subscription identifiers.
+	 * @return The virtual machine state of each subscription. A subscription whose instance is not found completes
+	 *         with the same {@link ValidationJsonException} than {@link #getVmDetails(Map)}.
+	 */
+	public Map<Integer, CompletableFuture<AwsVmState>> getVmStatesAsync(final Collection<Integer> subscriptions) {
+		return toSubscriptions(subscriptions, this::getVmStatesAsync);
+	}
+
+	/**
+	 * Return the power state of the virtual machine of a subscription, without the other details.
+	 *
+	 * @param subscription The subscription identifier.
+	 * @return The virtual machine state.
+	 * @throws Exception When the instance is not found or the subscription is not visible.
+	 */
+	@GET
+	@Path("{subscription:\\d+}/state")
+	public AwsVmState getVmState(@PathParam("subscription") final int subscription) throws Exception {
+		final var parameters = subscriptionResource.getParameters(subscription);
 		final var instanceId = parameters.get(PARAMETER_INSTANCE_ID);
+		return join(getVmStatesAsync(parameters, List.of(instanceId)).thenApply(s -> Optional
+				.ofNullable(s.get(instanceId))
+				.orElseThrow(() -> new ValidationJsonException(PARAMETER_INSTANCE_ID, "aws-instance-id", instanceId))));
+	}
+
+	/**
+	 * Return the power state of the virtual machines of all the AWS subscriptions of a project, streamed as
+	 * newline-delimited JSON as soon as they are described. The subscriptions sharing the same credentials and region
+	 * are described together, with a bounded amount of concurrent groups. The subscriptions not described before the
+	 * deadline are reported with the <code>timeout</code> error.
+	 *
+	 * @param project The project identifier.
+	 * @param node    The optional node, or parent node, of the subscriptions. When <code>null</code>, all the AWS
+	 *                subscriptions are included.
+	 * @return The streamed state of each subscription, one JSON object per line.
+	 * @throws EntityNotFoundException When the project is not visible by the current user.
+	 */
+	@GET
+	@Path("status/{project:\\d+}")
+	@Produces(MEDIA_TYPE_NDJSON)
+	public StreamingOutput getVmStates(@PathParam("project") final int project, @QueryParam("node") final String node) {
+		// Check the project is visible before streaming
+		if (projectRepository.findOneVisible(project, securityHelper.getLogin()) == null) {
+			throw new EntityNotFoundException(String.valueOf(project));
+		}
+		final var root = StringUtils.defaultIfBlank(node, KEY);
+
+		// Resolve the subscriptions before streaming
+		final var subscriptions = new LinkedHashMap<Integer, Map<String, String>>();
+		subscriptionRepository.findAllBy("project.id", project).stream()
+				.filter(s -> isParentNode(KEY, s.getNode().getId()) && isParentNode(root, s.getNode().getId()))
+				.forEach(s -> subscriptions.put(s.getId(), subscriptionResource.getParameters(s.getId())));
+		final var deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(configuration.get(CONF_STATUS_DEADLINE, 10000));
+		final var states = toSubscriptions(subscriptions, configuration.get(CONF_STATUS_PARALLELISM, 4),
+				() -> System.nanoTime() - deadline > 0, this::getVmStatesAsync);
+		return output -> writeStates(output, states, deadline);
+	}
 
-		// Get the VM if exists
-		return getDescribeInstances(parameters, "&Filter.1.Name=instance-id&Filter.1.Value.1=" + instanceId,
-				this::toVmDetails).stream().findFirst().orElseThrow(
-						() -> new ValidationJsonException(PARAMETER_INSTANCE_ID, "aws-instance-id", instanceId));
+	/**
+	 * Indicate the given node is the parent node or the node itself.
+	 */
+	private boolean isParentNode(final String parent, final String node) {
+		return node.equals(parent) || node.startsWith(parent + ":");
+	}
+
+	/**
+	 * Write the state of each subscription as soon as it is described, until the deadline.
+	 */
+	private void writeStates(final OutputStream output, final Map<Integer, CompletableFuture<AwsVmState>> states,
+			final long deadline) throws IOException {
+		final var described = new LinkedBlockingQueue<AwsSubscriptionState>();
+		states.forEach((s, f) -> f.handle((state, e) -> new AwsSubscriptionState(s, state, toError(e)))
+				.thenAccept(described::add));
+		final var remaining = new LinkedHashSet<>(states.keySet());
+		try {
+			while (!remaining.isEmpty()) {
+				final var state = described.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				if (state == null) {
+					// Deadline is reached
+					break;
+				}
+				remaining.remove(state.getSubscription());
+				writeState(output, state);
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (final var subscription : remaining) {
+			writeState(output, new AwsSubscriptionState(subscription, null, "timeout"));
+		}
+	}
+
+	private void writeState(final OutputStream output, final AwsSubscriptionState state) throws IOException {
+		output.write(objectMapper.writeValueAsBytes(state));
+		output.write('\n');
+		output.flush();
+	}
+
+	/**
+	 * Return the error code of a failed description.
+	 */
+	private String toError(final Throwable failure) {
+		if (failure == null) {
+			return null;
+		}
+		final var cause = failure instanceof CompletionException ? failure.getCause() : failure;
+		if (cause instanceof ValidationJsonException) {
+			return "aws-instance-id";
+		}
+		return cause instanceof TimeoutException ? "timeout" : "aws-failure";
+	}
+
+	/**
+	 * Group the subscriptions by credentials and region, describe the instances of each group with a single call, and
+	 * dispatch the described instances back to their subscriptions.
+	 *
+	 * @param subscriptions The subscription identifiers.
+	 * @param describe      The group description call, returning the found instances by identifier.
+	 * @param <T>           The described instance type.
+	 * @return The described instance of each subscription.
+	 */
+	private <T> Map<Integer, CompletableFuture<T>> toSubscriptions(final Collection<Integer> subscriptions,
+			final BiFunction<Map<String, String>, List<String>, CompletableFuture<Map<String, T>>> describe) {
+		final var parameters = new LinkedHashMap<Integer, Map<String, String>>();
+		subscriptions.forEach(s -> parameters.computeIfAbsent(s, pvResource::getSubscriptionParameters));
+		return toSubscriptions(parameters, Integer.MAX_VALUE, () -> false, describe);
+	}
+
+	/**
+	 * Group the subscriptions by credentials and region, describe the instances of each group with a single call, and
+	 * dispatch the described instances back to their subscriptions.
+	 *
+	 * @param subscriptions The subscription parameters by identifier.
+	 * @param parallelism   The maximal amount of groups described concurrently.
+	 * @param expired       When <code>true</code>, the next groups are no more described and complete with a
+	 *                      {@link TimeoutException}.
+	 * @param describe      The group description call, returning the found instances by identifier.
+	 * @param <T>           The described instance type.
+	 * @return The described instance of each subscription.
+	 */
+	private <T> Map<Integer, CompletableFuture<T>> toSubscriptions(final Map<Integer, Map<String, String>> subscriptions,
+			final int parallelism, final BooleanSupplier expired,
+			final BiFunction<Map<String, String>, List<String>, CompletableFuture<Map<String, T>>> describe) {
+		// Group the subscriptions by credentials and region
+		final var groups = new LinkedHashMap<String, Map<Integer, Map<String, String>>>();
+		subscriptions.forEach((s, p) -> groups.computeIfAbsent(getAccountKey(p), k -> new LinkedHashMap<>()).put(s, p));
+
+		// Demultiplex the described instances to their subscriptions
+		final var pending = new ConcurrentLinkedQueue<Supplier<CompletableFuture<?>>>();
+		final var result = new LinkedHashMap<Integer, CompletableFuture<T>>();
+		groups.values().forEach(group -> {
+			final var described = new CompletableFuture<Map<String, T>>();
+			pending.add(() -> describeGroup(group, expired, describe, described));
+			group.forEach((s, p) -> {
+				final var instanceId = p.get(PARAMETER_INSTANCE_ID);
+				result.put(s, described.thenApply(v -> Optional.ofNullable(v.get(instanceId)).orElseThrow(
+						() -> new ValidationJsonException(PARAMETER_INSTANCE_ID, "aws-instance-id", instanceId))));
+			});
+		});
+		drain(pending, new AtomicInteger(parallelism), new AtomicInteger());
+		return result;
+	}
+
+	/**
+	 * Start the pending descriptions while there are free slots. A completed description releases its slot and
+	 * drains again. Only one thread drains at a time, and the draining thread loops rather than recurses, since a
+	 * description completed by the draining thread, such as after the deadline, drains again at once.
+	 *
+	 * @param pending The pending descriptions.
+	 * @param free    The free slots.
+	 * @param drains  The requested drains, including the running one.
+	 */
+	private void drain(final Queue<Supplier<CompletableFuture<?>>> pending, final AtomicInteger free,
+			final AtomicInteger drains) {
+		if (drains.getAndIncrement() != 0) {
+			// The running drain will loop again
+			return;
+		}
+		do {
+			while (free.get() > 0 && !pending.isEmpty()) {
+				free.decrementAndGet();
+				pending.poll().get().whenComplete((r, e) -> {
+					// The next group takes the released slot
+					free.incrementAndGet();
+					drain(pending, free, drains);
+				});
+			}
+		} while (drains.decrementAndGet() != 0);
+	}
+
+	/**
+	 * Describe the instances of a group of subscriptions sharing the same credentials and region.
+	 */
+	private <T> CompletableFuture<Map<String, T>> describeGroup(final Map<Integer, Map<String, String>> group,
+			final BooleanSupplier expired,
+			final BiFunction<Map<String, String>, List<String>, CompletableFuture<Map<String, T>>> describe,
+			final CompletableFuture<Map<String, T>> described) {
+		if (expired.getAsBoolean()) {
+			described.completeExceptionally(new TimeoutException());
+			return described;
+		}
+		try {
+			describe.apply(group.values().iterator().next(),
+					group.values().stream().map(p -> p.get(PARAMETER_INSTANCE_ID)).toList()).whenComplete((r, e) -> {
+						if (e == null) {
+							described.complete(r);
+						} else {
+							described.completeExceptionally(e);
+						}
+					});
+		} catch (final RuntimeException e) {
+			described.completeExceptionally(e);
+		}
+		return described;
+	}
+
+	/**
+	 * Return the power states of the given virtual machines of an account and a region, without blocking. The
+	 * identifiers are chunked to the maximal amount of instance identifiers of a DescribeInstanceStatus request, and
+	 * the chunks are described concurrently.
+	 *
+	 * @param parameters  The subscription parameters holding the credentials and the region.
+	 * @param instanceIds The instance identifiers.
+	 * @return The found virtual machine states by identifier. The instances not found are absent. Completed
+	 *         exceptionally when the states cannot be described.
+	 */
+	protected CompletableFuture<Map<String, AwsVmState>> getVmStatesAsync(final Map<String, String> parameters,
+			final Collection<String> instanceIds) {
+		final var ids = new LinkedHashSet<>(instanceIds);
+		final var chunks = ListUtils.partition(List.copyOf(ids), MAX_INSTANCE_IDS).stream()
+				.map(c -> getVmStatesChunkAsync(parameters, c, true)).toList();
+		return CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new))
+				.thenApply(v -> chunks.stream().map(CompletableFuture::join).flatMap(List::stream)
+						.filter(s -> ids.contains(s.getId())).collect(Collectors.toMap(AwsVmState::getId, Function.identity(), (a, b) -> a)));
+	}
+
+	/**
+	 * Describe the states of a chunk of instances. Since an unknown or malformed instance identifier fails the whole
+	 * request, the instances named by the error are dropped and the other ones are described again, once. Any other
+	 * failure completes the future exceptionally.
+	 */
+	private CompletableFuture<List<AwsVmState>> getVmStatesChunkAsync(final Map<String, String> parameters,
+			final List<String> instanceIds, final boolean retry) {
+		final var query = new StringBuilder("Action=DescribeInstanceStatus&IncludeAllInstances=true");
+		for (var i = 0; i < instanceIds.size(); i++) {
+			query.append("&InstanceId.").append(i + 1).append('=').append(instanceIds.get(i));
+		}
+		return processEC2AsyncResponse(parameters, query.toString(), vmStatesParser).thenCompose(response -> {
+			if (response.isSuccess()) {
+				return CompletableFuture.completedFuture(ListUtils.emptyIfNull(response.getContent()));
+			}
+			final var code = response.getErrorCode();
+			if (code != null && INSTANCE_ID_ERRORS.contains(code)) {
+				// Drop the instances named by the error, or the only requested one
+				final var named = getNamed(response.getError());
+				final var remaining = instanceIds.size() == 1 ? List.<String>of()
+						: instanceIds.stream().filter(i -> !named.contains(i)).toList();
+				if (remaining.isEmpty()) {
+					return CompletableFuture.completedFuture(List.<AwsVmState>of());
+				}
+				if (retry && remaining.size() < instanceIds.size()) {
+					return getVmStatesChunkAsync(parameters, remaining, false);
+				}
+			}
+			log.info("AWS instance status of {} cannot be described: {} {}", instanceIds, response.getStatus(), code);
+			return CompletableFuture.failedFuture(new BusinessException("DescribeInstanceStatus-failed"));
+		});
+	}
+
+	/**
+	 * Return the words of the given error response, including the instance identifiers it names.
+	 */
+	private Set<String> getNamed(final String error) {
+		return ERROR_WORD.matcher(StringUtils.defaultString(error)).results().map(MatchResult::group)
+				.collect(Collectors.toSet());
+	}
+
+	/**
+	 * Return the details of the given virtual machines of an account and a region, without blocking. The identifiers
+	 * are chunked to the maximal amount of filter values, and the chunks are described concurrently.
+	 *
+	 * @param parameters  The subscription parameters holding the credentials and the region.
+	 * @param instanceIds The instance identifiers.
+	 * @return The found virtual machines by identifier. The instances not found are absent.
+	 */
+	protected CompletableFuture<Map<String, AwsVm>> getVmDetailsAsync(final Map<String, String> parameters,
+			final Collection<String> instanceIds) {
+		final var ids = new LinkedHashSet<>(instanceIds);
+		final var chunks = ListUtils.partition(List.copyOf(ids), MAX_FILTER_VALUES)
+				.stream().map(c -> processEC2Async(parameters,
+						getDescribeInstancesQuery(toInstanceIdFilter(c)), vmDetailsParser))
+				.toList();
+		return CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new))
+				.thenApply(v -> chunks.stream().map(CompletableFuture::join).map(ListUtils::emptyIfNull)
+						.flatMap(List::stream).filter(vm -> ids.contains(vm.getId()))
+						.collect(Collectors.toMap(AwsVm::getId, Function.identity(), (a, b) -> a)));
+	}
+
+	/**
+	 * Return the DescribeInstances filter of the given instance identifiers.
+	 */
+	private String toInstanceIdFilter(final List<String> instanceIds) {
+		final var filter = new StringBuilder("&Filter.1.Name=instance-id");
+		for (var i = 0; i < instanceIds.size(); i++) {
+			filter.append("&Filter.1.Value.").append(i + 1).append('=').append(instanceIds.get(i));
+		}
+		return filter.toString();
 	}
 
 	@Override
@@ -390,14 +1197,17 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 	 * @return <code>true</code> when the transition succeed.
 	 */
 	private boolean logTransitionState(final String response)
-			throws XPathExpressionException, SAXException, IOException, ParserConfigurationException {
-		final var items = xml.getXpath(ObjectUtils.getIfNull(response, "<a></a>"),
-				"/*[contains(local-name(),'InstancesResponse')]/instancesSet/item");
-		return IntStream.range(0, items.getLength()).mapToObj(items::item).map(n -> (Element) n)
-				.peek(e -> log.info("Instance {} goes from {} to {} state", xml.getTagText(e, "instanceId"),
-						getEc2State(e, "previousState"), getEc2State(e, "currentState")))
-				.findFirst().isPresent();
-
+			throws SAXException, IOException {
+		if (response == null) {
+			return false;
+		}
+		final var items = awsXml.getNodes(awsXml.parse(response), XPATH_TRANSITIONS);
+		for (var i = 0; i < items.getLength(); i++) {
+			final var item = items.item(i);
+			log.info("Instance {} goes from {} to {} state", awsXml.getText(item, "instanceId"),
+					awsXml.getText(item, "previousState/code"), awsXml.getText(item, "currentState/code"));
+		}
+		return items.getLength() > 0;
 	}
 
 	/**
@@ -417,7 +1227,6 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 		final var request = new CurlRequest(query.getMethod(), toUrl(query), query.getBody());
 		request.getHeaders().putAll(query.getHeaders());
 		request.getHeaders().put("Authorization", authorization);
-		request.setSaveResponse(true);
 		return request;
 	}
 
@@ -435,7 +1244,8 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 	}
 
 	/**
-	 * Execute an EC2 query using the given subscription parameters.
+	 * Execute an EC2 query using the given subscription parameters. A read only query shares the response of an
+	 * identical query already in flight.
 	 *
 	 * @param parameters The subscription's parameters.
 	 * @param query      The query string that would be placed into the AWS body.
@@ -443,18 +1253,163 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 	 * @return The response. <code>null</code> when failed.
 	 */
 	protected String processEC2(final Map<String, String> parameters, final String query) {
-		final var signatureQuery = AWS4SignatureQuery.builder().service("ec2")
-				.body(query + "&Version=" + VmAwsPluginResource.API_VERSION);
-		final var request = newRequest(signatureQuery, parameters);
-		try (var curl = new CurlProcessor()) {
-			curl.process(request);
+		return processEC2(parameters, query, ResponseParser.TEXT);
+	}
+
+	/**
+	 * Execute an EC2 query using the given subscription parameters. The response is streamed to the given parser. A
+	 * read only query shares the parsed response of an identical query already in flight with the same parser.
+	 *
+	 * @param parameters The subscription's parameters.
+	 * @param query      The query string that would be placed into the AWS body.
+	 * @param parser     The parser of the response stream.
+	 * @param <T>        The parsed response type.
+	 *
+	 * @return The parsed response. <code>null</code> when failed.
+	 */
+	protected <T> T processEC2(final Map<String, String> parameters, final String query,
+			final ResponseParser<T> parser) {
+		try {
+			return coalesce(parameters, query, parser,
+					() -> CompletableFuture.completedFuture(processEC2Now(parameters, query, parser))).join();
+		} catch (final CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+
+	private <T> T processEC2Now(final Map<String, String> parameters, final String query,
+			final ResponseParser<T> parser) {
+		// The rate limiter wait and the backoff are done outside the bulkhead
+		// Each attempt is signed after its wait, so a long wait cannot expire the signature
+		return rateLimiter.execute(getRateLimiterKey(parameters),
+				() -> circuitBreaker.execute(parameters.get(PARAMETER_ACCESS_KEY_ID), getRegion(parameters), EC2,
+						() -> httpClient.execute(newRequest(newEc2Query(query), parameters), parser)))
+				.getContent();
+	}
+
+	/**
+	 * Execute an EC2 query using the given subscription parameters without blocking the calling thread.
+	 *
+	 * @param subscription  The subscription holding the parameters.
+	 * @param queryProvider The query string provider that would be placed into the AWS body.
+	 *
+	 * @return The future response. Completed with <code>null</code> when failed.
+	 */
+	protected CompletableFuture<String> processEC2Async(final int subscription,
+			final Function<Map<String, String>, String> queryProvider) {
+		return processEC2Async(subscription, queryProvider, ResponseParser.TEXT);
+	}
+
+	/**
+	 * Execute an EC2 query using the given subscription parameters without blocking the calling thread. The response
+	 * is parsed by the given parser.
+	 *
+	 * @param subscription  The subscription holding the parameters.
+	 * @param queryProvider The query string provider that would be placed into the AWS body.
+	 * @param parser        The parser of the response stream.
+	 * @param <T>           The parsed response type.
+	 *
+	 * @return The future parsed response. Completed with <code>null</code> when failed.
+	 */
+	protected <T> CompletableFuture<T> processEC2Async(final int subscription,
+			final Function<Map<String, String>, String> queryProvider, final ResponseParser<T> parser) {
+		final var parameters = pvResource.getSubscriptionParameters(subscription);
+		return processEC2Async(parameters, queryProvider.apply(parameters), parser);
+	}
+
+	/**
+	 * Execute an EC2 query using the given subscription parameters without blocking the calling thread. A read only
+	 * query shares the parsed response of an identical query already in flight with the same parser.
+	 *
+	 * @param parameters The subscription's parameters.
+	 * @param query      The query string that would be placed into the AWS body.
+	 * @param parser     The parser of the response stream.
+	 * @param <T>        The parsed response type.
+	 *
+	 * @return The future parsed response. Completed with <code>null</code> when failed.
+	 */
+	protected <T> CompletableFuture<T> processEC2Async(final Map<String, String> parameters, final String query,
+			final ResponseParser<T> parser) {
+		return coalesce(parameters, query, parser, () -> processEC2AsyncNow(parameters, query, parser));
+	}
+
+	private <T> CompletableFuture<T> processEC2AsyncNow(final Map<String, String> parameters, final String query,
+			final ResponseParser<T> parser) {
+		return processEC2AsyncResponse(parameters, query, parser).thenApply(AwsResponse::getContent);
+	}
+
+	/**
+	 * Execute an EC2 query using the given subscription parameters without blocking the calling thread, and return
+	 * the whole response, including the error code of a failed one. The response is not shared.
+	 */
+	private <T> CompletableFuture<AwsResponse<T>> processEC2AsyncResponse(final Map<String, String> parameters,
+			final String query, final ResponseParser<T> parser) {
+		return rateLimiter.executeAsync(getRateLimiterKey(parameters),
+				() -> circuitBreaker.executeAsync(parameters.get(PARAMETER_ACCESS_KEY_ID), getRegion(parameters), EC2,
+						() -> httpClient.executeAsync(newRequest(newEc2Query(query), parameters), parser)));
+	}
+
+	/**
+	 * Share the result of an identical read only query already in flight, or execute the given call.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> CompletableFuture<T> coalesce(final Map<String, String> parameters, final String query,
+			final ResponseParser<T> parser, final Supplier<CompletableFuture<T>> call) {
+		if (isCoalescable(query)) {
+			return (CompletableFuture<T>) (CompletableFuture<?>) inFlight.execute(
+					new InFlightKey(getInFlightKey(parameters, query), parser),
+					() -> (CompletableFuture<Object>) (CompletableFuture<?>) call.get());
 		}
-		return request.getResponse();
+		return call.get();
+	}
+
+	/**
+	 * Indicate the given query can share the response of a concurrent identical query: only read only actions.
+	 */
+	private boolean isCoalescable(final String query) {
+		return query.startsWith("Action=Describe");
+	}
+
+	/**
+	 * Return the key identifying identical queries: same credentials, region and body. The secret is hashed.
+	 */
+	private String getInFlightKey(final Map<String, String> parameters, final String query) {
+		return getAccountKey(parameters) + "/" + query;
+	}
+
+	/**
+	 * Return the key identifying the account and the region: same credentials and region. The secret is hashed.
+	 *
+	 * @param parameters The subscription's parameters.
+	 * @return The account and region key.
+	 */
+	protected String getAccountKey(final Map<String, String> parameters) {
+		return parameters.get(PARAMETER_ACCESS_KEY_ID) + "/"
+				+ DigestUtils.sha256Hex(Objects.toString(parameters.get(PARAMETER_SECRET_ACCESS_KEY), "")) + "/"
+				+ getRegion(parameters);
+	}
+
+	/**
+	 * Return the rate limiter key: the requests are limited per access key and region.
+	 */
+	private String getRateLimiterKey(final Map<String, String> parameters) {
+		return parameters.get(PARAMETER_ACCESS_KEY_ID) + "/" + getRegion(parameters);
+	}
+
+	/**
+	 * Return a new EC2 signature query builder for the given query.
+	 */
+	private AWS4SignatureQueryBuilder newEc2Query(final String query) {
+		return AWS4SignatureQuery.builder().service(EC2).body(query + "&Version=" + VmAwsPluginResource.API_VERSION);
 	}
 
 	@Override
 	public void snapshot(final VmSnapshotStatus transientTask) throws Exception {
 		snapshotResource.create(transientTask);
+		statusCache.invalidate(transientTask.getLocked().getId());
 	}
 
 	/**
@@ -468,48 +1423,36 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 	}
 
 	/**
-	 * Build a described {@link AwsVm} bean from an XML VMRecord entry.
-	 */
-	private AwsVm toVm(final Element record) {
-		final var result = new AwsVm();
-		result.setId(xml.getTagText(record, "instanceId"));
-		result.setName(Objects.toString(getName(record), result.getId()));
-		result.setDescription(getResourceTag(record, "description"));
-		final var state = getEc2State(record);
-		result.setStatus(CODE_TO_STATUS.get(state));
-		result.setBusy(Arrays.binarySearch(BUSY_CODES, state) >= 0);
-		result.setVpc(xml.getTagText(record, "vpcId"));
-		result.setAz(xml.getTagText((Element) record.getElementsByTagName("placement").item(0), "availabilityZone"));
-
-		final var type = instanceTypes.get(xml.getTagText(record, "instanceType"));
-		// Instance type details
-		result.setRam(Optional.ofNullable(type).map(InstanceType::getRam).map(m -> (int) (m * 1024d)).orElse(0));
-		result.setCpu(Optional.ofNullable(type).map(InstanceType::getCpu).orElse(0));
-		result.setDeployed(result.getStatus() == VmStatus.POWERED_ON);
-		return result;
-	}
-
-	/**
-	 * Build a described {@link AwsVm} bean from an XML VMRecord entry.
+	 * Build described beans from a streamed XML result.
+	 *
+	 * @param input   The XML stream.
+	 * @param details When <code>true</code>, the network details are decoded.
+	 * @return The described beans.
+	 * @throws XMLStreamException When the XML content is invalid.
 	 */
-	private AwsVm toVmDetails(final Element record) {
-		final var result = toVm(record);
-
-		// Network details
-		result.setNetworks(new ArrayList<>());
-
-		// Get network data for each network references
-		addNetworkDetails(record, result.getNetworks());
-		return result;
+	private List<AwsVm> toVms(final InputStream input, final boolean details) throws XMLStreamException {
+		final var reader = awsXml.newReader(input);
+		try {
+			return new AwsVmDecoder(instanceTypes, details).decode(reader);
+		} finally {
+			reader.close();
+		}
 	}
 
 	/**
-	 * Build described beans from a XML result.
+	 * Build instance states from a streamed XML result.
+	 *
+	 * @param input The XML stream.
+	 * @return The instance states.
+	 * @throws XMLStreamException When the XML content is invalid.
 	 */
-	private List<AwsVm> toVms(final String vmAsXml, final Function<Element, AwsVm> parser) throws Exception {
-		final var items = xml.getXpath(vmAsXml, "/DescribeInstancesResponse/reservationSet/item/instancesSet/item");
-		return IntStream.range(0, items.getLength()).mapToObj(items::item).map(n -> parser.apply((Element) n))
-				.toList();
+	private List<AwsVmState> toVmStates(final InputStream input) throws XMLStreamException {
+		final var reader = awsXml.newReader(input);
+		try {
+			return AwsVmDecoder.decodeStates(reader);
+		} finally {
+			reader.close();
+		}
 	}
 
 	/**
@@ -521,10 +1464,9 @@ public class VmAwsPluginResource extends AbstractToolPluginResource
 	protected boolean validateAccess(final Map<String, String> parameters) {
 		// Call STS service
 		final var query = "Action=GetCallerIdentity&Version=2011-06-15";
-		final var builder = AWS4SignatureQuery.builder().service("sts").body(query);
-		try (var curl = new CurlProcessor()) {
-			return curl.process(newRequest(builder, parameters));
-		}
+		final var request = newRequest(AWS4SignatureQuery.builder().service(STS).body(query), parameters);
+		return circuitBreaker.execute(parameters.get(PARAMETER_ACCESS_KEY_ID), getRegion(parameters), STS,
+				() -> httpClient.execute(request, ResponseParser.TEXT)).isSuccess();
 	}
 
 }
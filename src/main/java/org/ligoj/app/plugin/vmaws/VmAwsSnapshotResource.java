@@ -15,22 +15,20 @@ import org.ligoj.app.plugin.vm.model.SnapshotOperation;
 import org.ligoj.app.plugin.vm.model.VmSnapshotStatus;
 import org.ligoj.app.plugin.vm.snapshot.Snapshot;
 import org.ligoj.app.plugin.vm.snapshot.VmSnapshotResource;
-import org.ligoj.app.plugin.vm.snapshot.VolumeSnapshot;
-import org.ligoj.app.resource.plugin.XmlUtils;
+import org.ligoj.app.plugin.vmaws.http.ResponseParser;
 import org.ligoj.app.resource.subscription.SubscriptionResource;
 import org.ligoj.bootstrap.core.resource.BusinessException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.IntStream;
 
 /**
@@ -68,6 +66,16 @@ public class VmAwsSnapshotResource {
 	 */
 	public static final String TAG_AUDIT = TAG_PREFIX + "audit";
 
+	/**
+	 * Identifier of the image created by a CreateImage response.
+	 */
+	private static final String XPATH_IMAGE_ID = "/*/imageId";
+
+	/**
+	 * Result of a CreateTags, DeregisterImage or DeleteSnapshot response.
+	 */
+	private static final String XPATH_RETURN = "/*/return";
+
 	@Autowired
 	protected VmAwsPluginResource resource;
 
@@ -78,10 +86,15 @@ public class VmAwsSnapshotResource {
 	protected VmSnapshotResource snapshotResource;
 
 	@Autowired
-	protected XmlUtils xml;
+	protected IamProvider[] iamProvider;
 
 	@Autowired
-	protected IamProvider[] iamProvider;
+	protected AwsXml awsXml;
+
+	/**
+	 * Parser of all described AMIs.
+	 */
+	private final ResponseParser<List<Snapshot>> amisParser = i -> toAmiList(i, null);
 
 	/**
 	 * Complete the task status from remote AWS information. Is considered as not completely finished when AMI tasks are
@@ -117,11 +130,10 @@ public class VmAwsSnapshotResource {
 	 *
 	 * @param task A transient instance of the related task, and also linked to a subscription. Note it is a read-only
 	 *             view.
-	 * @throws IOException                  When VM definition XML cannot be retrieved.
-	 * @throws SAXException                 When the XML validation failed.
-	 * @throws ParserConfigurationException When the XML parsing failed.
+	 * @throws IOException  When VM definition XML cannot be retrieved.
+	 * @throws SAXException When the XML validation failed.
 	 */
-	protected void create(final VmSnapshotStatus task) throws SAXException, IOException, ParserConfigurationException {
+	protected void create(final VmSnapshotStatus task) throws SAXException, IOException {
 		final int subscription = task.getLocked().getId();
 		final var parameters = subscriptionResource.getParametersNoCheck(subscription);
 		// Create the AMI
@@ -145,7 +157,7 @@ public class VmAwsSnapshotResource {
 		}
 
 		// Get the AMI details from its identifier after a little while
-		final var amiId = xml.getTagText(xml.parse(amiResponse), "imageId");
+		final var amiId = awsXml.getText(awsXml.parse(amiResponse), XPATH_IMAGE_ID);
 
 		// Tag for subscription and audit association
 		snapshotResource.nextStep(subscription, s -> {
@@ -175,11 +187,10 @@ public class VmAwsSnapshotResource {
 	 *
 	 * @param task A transient instance of the related task, and also linked to a subscription. Note it is a read-only
 	 *             view.
-	 * @throws ParserConfigurationException XML parsing failed.
-	 * @throws IOException                  XML reading failed by the parser.
-	 * @throws SAXException                 XML processing failed.
+	 * @throws IOException  XML reading failed by the parser.
+	 * @throws SAXException XML processing failed.
 	 */
-	public void delete(final VmSnapshotStatus task) throws SAXException, IOException, ParserConfigurationException {
+	public void delete(final VmSnapshotStatus task) throws SAXException, IOException {
 		final var subscription = task.getLocked().getId();
 		// Initiate the task, validate the AMI to delete
 		snapshotResource.nextStep(subscription, s -> {
@@ -246,17 +257,56 @@ public class VmAwsSnapshotResource {
 	 * @return Matching AMIs ordered by descending creation date.
 	 */
 	private List<Snapshot> findAll(final int subscription, final String filter) {
+		return findAll(subscription, filter, null);
+	}
 
-		// Get all AMI associated to a snapshot and the subscription
+	/**
+	 * Return the AMIs visible owned by the account associated to the subscription and matching to the given criteria.
+	 *
+	 * @param subscription The related subscription identifier.
+	 * @param filter       The additional "DescribeImages" filters. The base filter is "Owner.1=self".
+	 * @param criteria     The search criteria evaluated while parsing the response. When <code>null</code> or empty,
+	 *                     all AMIs are returned.
+	 * @return Matching AMIs, with their resolved author.
+	 */
+	private List<Snapshot> findAll(final int subscription, final String filter, final String criteria) {
 		try {
-			return toAmiList(resource.processEC2(subscription,
-					p -> "Action=DescribeImages&Owner.1=self" + Objects.toString(filter, "")));
-		} catch (final Exception e) {
-			log.error("DescribeImages failed for subscription {} and filter '{}'", subscription, filter, e);
-			throw new BusinessException("DescribeImages-failed");
+			return resolveAuthors(findAllAsync(subscription, filter, criteria).join());
+		} catch (final CompletionException e) {
+			// Already logged
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
 		}
 	}
 
+	/**
+	 * Return the AMIs visible owned by the account associated to the subscription and matching to the given criteria
+	 * without blocking the calling thread. The non matching AMIs are dropped while the response is parsed.
+	 *
+	 * @param subscription The related subscription identifier.
+	 * @param filter       The additional "DescribeImages" filters. The base filter is "Owner.1=self".
+	 * @param criteria     The search criteria. Case is insensitive. When <code>null</code> or empty, all AMIs are
+	 *                     returned.
+	 * @return The future matching AMIs, their author is only identified by its login. Completed exceptionally with a
+	 *         {@link BusinessException} when the AMIs cannot be read.
+	 */
+	protected CompletableFuture<List<Snapshot>> findAllAsync(final int subscription, final String filter,
+			final String criteria) {
+		// All AMIs share the same parser, so the concurrent identical queries are coalesced
+		final ResponseParser<List<Snapshot>> parser = StringUtils.isEmpty(criteria) ? amisParser
+				: i -> toAmiList(i, criteria);
+
+		// Get all AMI associated to a snapshot and the subscription
+		return resource.processEC2Async(subscription,
+				p -> "Action=DescribeImages&Owner.1=self" + Objects.toString(filter, ""), parser)
+				.thenApply(ListUtils::emptyIfNull).exceptionally(e -> {
+					log.error("DescribeImages failed for subscription {} and filter '{}'", subscription, filter, e);
+					throw new BusinessException("DescribeImages-failed");
+				});
+	}
+
 	/**
 	 * Return all AMIs matching to the given criteria and also associated to the given subscription. Note that
 	 * "DescribeImages" does not work exactly the same way when <code>ImageId.N</code> filter is enabled. Without this
@@ -286,7 +336,7 @@ public class VmAwsSnapshotResource {
 	 */
 	private List<Snapshot> findAllByNameOrId(final int subscription, final String criteria,
 			final VmSnapshotStatus task) {
-		final var snapshots = new ArrayList<>(findAllBySubscription(subscription).stream().filter(s -> matches(s, criteria))
+		final var snapshots = new ArrayList<>(findAllBySubscription(subscription, criteria).stream()
 				.sorted((a, b) -> b.getDate().compareTo(a.getDate())).toList());
 
 		// Add the current task to the possible running snapshots
@@ -310,7 +360,20 @@ public class VmAwsSnapshotResource {
 	 * @return Matching AMIs ordered by descending creation date.
 	 */
 	private List<Snapshot> findAllBySubscription(final int subscription) {
-		return findAll(subscription, "&Filter.1.Name=tag:" + TAG_SUBSCRIPTION + "&Filter.1.Value=" + subscription);
+		return findAllBySubscription(subscription, null);
+	}
+
+	/**
+	 * Return the AMIs associated to the given subscription and matching to the given criteria.
+	 *
+	 * @param subscription The related subscription identifier.
+	 * @param criteria     The search criteria. Case is insensitive. When <code>null</code> or empty, all AMIs are
+	 *                     returned.
+	 * @return Matching AMIs.
+	 */
+	private List<Snapshot> findAllBySubscription(final int subscription, final String criteria) {
+		return findAll(subscription, "&Filter.1.Name=tag:" + TAG_SUBSCRIPTION + "&Filter.1.Value=" + subscription,
+				criteria);
 	}
 
 	/**
@@ -358,6 +421,19 @@ public class VmAwsSnapshotResource {
 		return ami;
 	}
 
+	/**
+	 * Resolve the authors of the given AMIs by the calling thread, once per login, rather than by the response parser.
+	 *
+	 * @param amis The AMIs with their author only identified by its login.
+	 * @return The same AMIs, with their resolved author.
+	 */
+	private List<Snapshot> resolveAuthors(final List<Snapshot> amis) {
+		final var users = new HashMap<String, SimpleUser>();
+		amis.stream().filter(a -> a.getAuthor() != null)
+				.forEach(a -> a.setAuthor(users.computeIfAbsent(a.getAuthor().getId(), this::getUser)));
+		return amis;
+	}
+
 	/**
 	 * Request IAM provider to get user details.
 	 *
@@ -379,21 +455,19 @@ public class VmAwsSnapshotResource {
 	 *
 	 * @param response The AWS response.
 	 * @return <code>true</code> when the AWS response succeed.
-	 * @throws ParserConfigurationException XML parsing failed.
-	 * @throws IOException                  XML reading failed by the parser.
-	 * @throws SAXException                 XML processing failed.
+	 * @throws IOException  XML reading failed by the parser.
+	 * @throws SAXException XML processing failed.
 	 */
-	private boolean isReturnTrue(final String response) throws SAXException, IOException, ParserConfigurationException {
-		return response != null && BooleanUtils.toBoolean(xml.getTagText(xml.parse(response), "return"));
+	private boolean isReturnTrue(final String response) throws SAXException, IOException {
+		return response != null && BooleanUtils.toBoolean(awsXml.getText(awsXml.parse(response), XPATH_RETURN));
 	}
 
 	/**
 	 * Check the given snapshot matches to the criteria: name, id or one of its volume's identifiers.
 	 */
 	private boolean matches(final Snapshot snapshot, final String criteria) {
-		return Strings.CI.contains(StringUtils.defaultIfEmpty(snapshot.getName(), ""), criteria)
-				|| Strings.CI.contains(snapshot.getId(), criteria)
-				|| snapshot.getVolumes().stream().anyMatch(v -> Strings.CI.contains(v.getId(), criteria));
+		return AwsAmiDecoder.matches(snapshot.getId(), snapshot.getName(),
+				ListUtils.emptyIfNull(snapshot.getVolumes()), criteria);
 	}
 
 	/**
@@ -414,45 +488,6 @@ public class VmAwsSnapshotResource {
 		snapshot.setStatusText(statusText);
 	}
 
-	/**
-	 * Convert a XML AMI node to a {@link Snapshot} instance.
-	 */
-	private Snapshot toAmi(final Element element) {
-		final var snapshot = new Snapshot();
-		snapshot.setId(xml.getTagText(element, "imageId"));
-		snapshot.setName(xml.getTagText(element, "name"));
-		snapshot.setDescription(StringUtils.trimToNull(xml.getTagText(element, "description")));
-		snapshot.setStatusText(xml.getTagText(element, "imageState"));
-		snapshot.setAvailable("available".equals(snapshot.getStatusText()));
-		snapshot.setPending("pending".equals(snapshot.getStatusText()));
-
-		final var date = xml.getTagText(element, "creationDate");
-		final var xPath = xml.xpathFactory.newXPath();
-		try {
-			// Author
-			final var tags = (NodeList) xPath.compile("tagSet/item").evaluate(element, XPathConstants.NODESET);
-			snapshot.setAuthor(IntStream.range(0, tags.getLength()).mapToObj(tags::item)
-					.filter(t -> TAG_AUDIT.equals(xml.getTagText((Element) t, "key")))
-					.map(t -> xml.getTagText((Element) t, "value")).map(this::getUser).findAny().orElse(null));
-
-			// Volumes
-			final var volumes = (NodeList) xPath.compile("blockDeviceMapping/item").evaluate(element,
-					XPathConstants.NODESET);
-			snapshot.setVolumes(IntStream.range(0, volumes.getLength()).mapToObj(volumes::item)
-					.map(v -> toVolume((Element) v)).filter(v -> v.getId() != null).toList());
-
-			// Creation date
-			snapshot.setDate(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").parse(date));
-		} catch (final Exception pe) {
-			// Invalid of not correctly managed XML content
-			snapshot.setVolumes(ListUtils.emptyIfNull(snapshot.getVolumes()));
-			snapshot.setDate(new Date(0));
-			log.info("Details of AMI {} cannot be fully parsed", snapshot.getId(), pe);
-		}
-
-		return snapshot;
-	}
-
 	/**
 	 * Convert a task to an unavailable snapshot
 	 */
@@ -471,34 +506,17 @@ public class VmAwsSnapshotResource {
 	/**
 	 * Parse <code>DescribeImagesResponse</code> response to {@link Snapshot} list.
 	 *
-	 * @param amiListAsXml AMI descriptions as XML.
-	 * @return The parsed AMI as {@link Snapshot}.
+	 * @param input    AMI descriptions as XML stream.
+	 * @param criteria The search criteria. Case is insensitive. When <code>null</code> or empty, all AMIs are returned.
+	 * @return The parsed matching AMI as {@link Snapshot}.
+	 * @throws XMLStreamException When the XML content is invalid.
 	 */
-	private List<Snapshot> toAmiList(final String amiListAsXml)
-			throws XPathExpressionException, SAXException, IOException, ParserConfigurationException {
-		final var items = xml.getXpath(
-				StringUtils.defaultIfEmpty(amiListAsXml,
-						"<DescribeImagesResponse><imagesSet></imagesSet></DescribeImagesResponse>"),
-				"/DescribeImagesResponse/imagesSet/item");
-		return IntStream.range(0, items.getLength()).mapToObj(items::item).map(n -> toAmi((Element) n))
-				.toList();
-	}
-
-	/**
-	 * Convert a XML AMI mapping device to {@link VolumeSnapshot} instance.
-	 */
-	private VolumeSnapshot toVolume(final Element element) {
-		final var snapshot = new VolumeSnapshot();
-		snapshot.setName(xml.getTagText(element, "deviceName"));
-
-		// Only for EBS
-		final var ebs = element.getElementsByTagName("ebs");
-		IntStream.range(0, ebs.getLength()).mapToObj(ebs::item).findFirst().ifPresent(v -> {
-			final var se = (Element) v;
-			snapshot.setId(xml.getTagText(se, "snapshotId"));
-			snapshot.setSize(Integer.parseInt(Objects.toString(xml.getTagText(se, "volumeSize"), "0")));
-		});
-
-		return snapshot;
+	private List<Snapshot> toAmiList(final InputStream input, final String criteria) throws XMLStreamException {
+		final var reader = awsXml.newReader(input);
+		try {
+			return new AwsAmiDecoder(criteria).decode(reader);
+		} finally {
+			reader.close();
+		}
 	}
 }
@@ -5,21 +5,27 @@ package org.ligoj.app.plugin.vmaws.auth;
 
 import static org.apache.commons.lang3.StringUtils.LF;
 
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.stream.Collectors;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.apache.commons.codec.EncoderException;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.codec.digest.HmacAlgorithms;
-import org.apache.commons.codec.digest.HmacUtils;
 import org.apache.commons.codec.net.URLCodec;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Strings;
 import org.ligoj.bootstrap.core.resource.TechnicalException;
 
 /**
- * Common methods and properties for all AWS4 signer variants
+ * Common methods and properties for all AWS4 signer variants. The digest, the MAC and the buffers are confined to the
+ * calling thread and reused by the subsequent signatures.
  */
 public abstract class AWS4SignerBase {
 
@@ -27,8 +33,60 @@ public abstract class AWS4SignerBase {
 	protected static final String SCHEME = "AWS4";
 	protected static final String ALGORITHM = "HMAC-SHA256";
 	protected static final String TERMINATOR = "aws4_request";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
 	private final URLCodec urlCodec = new URLCodec();
 
+	/**
+	 * Signing state reused by the same thread.
+	 */
+	protected static final class SigningState {
+		private final MessageDigest sha256 = DigestUtils.getSha256Digest();
+		private final Mac hmac;
+		private final StringBuilder builder = new StringBuilder(1024);
+		private byte[] bytes = new byte[1024];
+
+		private SigningState() {
+			try {
+				hmac = Mac.getInstance(HmacAlgorithms.HMAC_SHA_256.getName());
+			} catch (final GeneralSecurityException e) {
+				throw new TechnicalException("HMAC-SHA256 is not available", e);
+			}
+		}
+
+		/**
+		 * Return the cleared reusable builder. Only one user at a time.
+		 *
+		 * @return The cleared reusable builder.
+		 */
+		protected StringBuilder builder() {
+			builder.setLength(0);
+			return builder;
+		}
+	}
+
+	private static final ThreadLocal<SigningState> STATE = ThreadLocal.withInitial(SigningState::new);
+
+	/**
+	 * Return the signing state of the current thread.
+	 *
+	 * @return The signing state of the current thread.
+	 */
+	protected SigningState getState() {
+		return STATE.get();
+	}
+
+	/**
+	 * Returns the header names sorted by case-insensitive order.
+	 *
+	 * @param headers Current headers.
+	 * @return The sorted header names.
+	 */
+	protected String[] getSortedHeaderNames(final Map<String, String> headers) {
+		final var names = headers.keySet().toArray(new String[0]);
+		Arrays.sort(names, String.CASE_INSENSITIVE_ORDER);
+		return names;
+	}
+
 	/**
 	 * Returns the canonical collection of header names that will be included in the signature. For AWS4, all header
 	 * names must be included in the process in sorted canonicalized order.
@@ -37,8 +95,24 @@ public abstract class AWS4SignerBase {
 	 * @return Appended headers names only.
 	 */
 	protected String getCanonicalizedHeaderNames(final Map<String, String> headers) {
-		return headers.keySet().stream().sorted(String.CASE_INSENSITIVE_ORDER).map(String::toLowerCase)
-				.collect(Collectors.joining(";"));
+		return getCanonicalizedHeaderNames(getSortedHeaderNames(headers));
+	}
+
+	/**
+	 * Returns the canonical collection of the given sorted header names.
+	 *
+	 * @param names The sorted header names.
+	 * @return Appended headers names only.
+	 */
+	protected String getCanonicalizedHeaderNames(final String[] names) {
+		final var result = new StringBuilder(names.length * 16);
+		for (final var name : names) {
+			if (!result.isEmpty()) {
+				result.append(';');
+			}
+			result.append(name.toLowerCase());
+		}
+		return result.toString();
 	}
 
 	/**
@@ -49,16 +123,47 @@ public abstract class AWS4SignerBase {
 	 * @return Appended headers names and values.
 	 */
 	protected String getCanonicalizedHeaderString(final Map<String, String> headers) {
-		if (headers.isEmpty()) {
-			return "";
+		return appendCanonicalizedHeaders(new StringBuilder(), getSortedHeaderNames(headers), headers).toString();
+	}
+
+	/**
+	 * Appends the canonical headers with values in the given sorted order. Each entry ends with a line feed. Multiple
+	 * white spaces in the names and the values are compressed to a single space.
+	 *
+	 * @param buffer  The target buffer.
+	 * @param names   The sorted header names.
+	 * @param headers Current headers.
+	 * @return The given buffer.
+	 */
+	protected StringBuilder appendCanonicalizedHeaders(final StringBuilder buffer, final String[] names,
+			final Map<String, String> headers) {
+		for (final var name : names) {
+			appendCompressed(buffer, name.toLowerCase());
+			buffer.append(':');
+			appendCompressed(buffer, headers.get(name));
+			buffer.append(LF);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Append the given text with each white space sequence replaced by a single space, same as
+	 * <code>replaceAll("\\s+", " ")</code>.
+	 */
+	private void appendCompressed(final StringBuilder buffer, final String text) {
+		var space = false;
+		for (var i = 0; i < text.length(); i++) {
+			final var c = text.charAt(i);
+			if (c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r') {
+				if (!space) {
+					buffer.append(' ');
+					space = true;
+				}
+			} else {
+				buffer.append(c);
+				space = false;
+			}
 		}
-		// step1: sort the headers by case-insensitive order
-		// step2: form the canonical header:value entries in sorted order.
-		// Multiple white spaces in the values should be compressed to a single
-		// space.
-		return headers.keySet().stream().sorted(String.CASE_INSENSITIVE_ORDER)
-				.map(key -> key.toLowerCase().replaceAll("\\s+", " ") + ":" + headers.get(key).replaceAll("\\s+", " "))
-				.collect(Collectors.joining(LF)) + LF;
 	}
 
 	/**
@@ -104,13 +209,35 @@ public abstract class AWS4SignerBase {
 	 * @return A canonicalized form for the specified query string parameters.
 	 */
 	public String getCanonicalizedQueryString(final Map<String, String> parameters) {
-		return parameters.keySet().stream().sorted().map(key -> {
-			try {
-				return urlCodec.encode(key) + "=" + urlCodec.encode(parameters.get(key));
-			} catch (final EncoderException e) {
-				throw new TechnicalException("Error during parameters encoding", e);
+		return appendCanonicalizedQueryString(new StringBuilder(), parameters).toString();
+	}
+
+	/**
+	 * Appends the canonicalized form of the specified query string parameters.
+	 *
+	 * @param buffer     The target buffer.
+	 * @param parameters The query string parameters to be canonicalized.
+	 * @return The given buffer.
+	 * @see #getCanonicalizedQueryString(Map)
+	 */
+	protected StringBuilder appendCanonicalizedQueryString(final StringBuilder buffer,
+			final Map<String, String> parameters) {
+		if (parameters.isEmpty()) {
+			return buffer;
+		}
+		final var keys = parameters.keySet().toArray(new String[0]);
+		Arrays.sort(keys);
+		try {
+			for (var i = 0; i < keys.length; i++) {
+				if (i > 0) {
+					buffer.append('&');
+				}
+				buffer.append(urlCodec.encode(keys[i])).append('=').append(urlCodec.encode(parameters.get(keys[i])));
 			}
-		}).collect(Collectors.joining("&"));
+		} catch (final EncoderException e) {
+			throw new TechnicalException("Error during parameters encoding", e);
+		}
+		return buffer;
 	}
 
 	/**
@@ -132,8 +259,28 @@ public abstract class AWS4SignerBase {
 	 * @return Hashed text.
 	 */
 	public String hash(final String text) {
-		return Hex.encodeHexString(
-				DigestUtils.getSha256Digest().digest(org.apache.commons.codec.binary.StringUtils.getBytesUtf8(text)));
+		return Hex.encodeHexString(digest(text));
+	}
+
+	/**
+	 * Appends the lower case hexadecimal SHA-256 hash of the given text.
+	 *
+	 * @param buffer The target buffer.
+	 * @param text   Text to hash.
+	 * @return The given buffer.
+	 */
+	protected StringBuilder appendHash(final StringBuilder buffer, final CharSequence text) {
+		for (final var b : digest(text)) {
+			buffer.append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F]);
+		}
+		return buffer;
+	}
+
+	private byte[] digest(final CharSequence text) {
+		final var state = getState();
+		final var length = toUtf8(state, text);
+		state.sha256.update(state.bytes, 0, length);
+		return state.sha256.digest();
 	}
 
 	/**
@@ -143,7 +290,42 @@ public abstract class AWS4SignerBase {
 	 * @param key        key
 	 * @return signature
 	 */
-	protected byte[] sign(final String stringData, final byte[] key) {
-		return new HmacUtils(HmacAlgorithms.HMAC_SHA_256, key).hmac(stringData);
+	protected byte[] sign(final CharSequence stringData, final byte[] key) {
+		final var state = getState();
+		final var length = toUtf8(state, stringData);
+		try {
+			state.hmac.init(new SecretKeySpec(key, state.hmac.getAlgorithm()));
+		} catch (final GeneralSecurityException e) {
+			throw new TechnicalException("Invalid signing key", e);
+		}
+		state.hmac.update(state.bytes, 0, length);
+		return state.hmac.doFinal();
+	}
+
+	/**
+	 * Encode the given text in UTF-8 into the reusable byte buffer of the state.
+	 *
+	 * @return The encoded length.
+	 */
+	private static int toUtf8(final SigningState state, final CharSequence text) {
+		final var length = text.length();
+		if (state.bytes.length < length) {
+			state.bytes = new byte[Math.max(length, state.bytes.length * 2)];
+		}
+		final var bytes = state.bytes;
+		for (var i = 0; i < length; i++) {
+			final var c = text.charAt(i);
+			if (c >= 0x80) {
+				// Not ASCII, let the JDK encoder handle it
+				final var utf8 = text.toString().getBytes(StandardCharsets.UTF_8);
+				if (state.bytes.length < utf8.length) {
+					state.bytes = new byte[utf8.length];
+				}
+				System.arraycopy(utf8, 0, state.bytes, 0, utf8.length);
+				return utf8.length;
+			}
+			bytes[i] = (byte) c;
+		}
+		return length;
 	}
-}
\ No newline at end of file
+}
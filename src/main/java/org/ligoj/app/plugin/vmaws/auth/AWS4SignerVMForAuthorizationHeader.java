@@ -3,9 +3,13 @@
  */
 package org.ligoj.app.plugin.vmaws.auth;
 
+import static org.apache.commons.lang3.StringUtils.LF;
+
 import java.time.Clock;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.commons.codec.binary.Hex;
 import org.springframework.stereotype.Service;
@@ -20,16 +24,36 @@ public class AWS4SignerVMForAuthorizationHeader extends AWS4SignerBase {
 	private static final String EMPTY_BODY_SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
 
 	/**
-	 * format strings for the date/time and date stamps required during signing
+	 * formatter for the date/time required during signing. The date stamp is its 8 first characters: "yyyyMMdd".
 	 **/
-	private static final String ISO8601_FORMAT = "yyyyMMdd'T'HHmmss'Z'";
-	private static final String DATE_FORMAT = "yyyyMMdd";
+	private static final DateTimeFormatter ISO8601_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+	/**
+	 * Maximal cached signing keys.
+	 */
+	private static final int MAX_SIGNING_KEYS = 256;
 
 	/**
 	 * clock used to date query
 	 */
 	private final Clock clock = Clock.systemUTC();
 
+	/**
+	 * Identity of a signing key. The secret is hashed.
+	 */
+	private record SigningKeyId(String secretHash, String date, String region, String service) {
+	}
+
+	/**
+	 * Derived signing keys, valid for a day. Least recently used keys are evicted.
+	 */
+	private final Map<SigningKeyId, byte[]> signingKeys = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<SigningKeyId, byte[]> eldest) {
+			return size() > MAX_SIGNING_KEYS;
+		}
+	};
+
 	/**
 	 * Computes an AWS4 signature for a request, ready for inclusion as an 'Authorization' header.
 	 *
@@ -40,9 +64,7 @@ public class AWS4SignerVMForAuthorizationHeader extends AWS4SignerBase {
 	public String computeSignature(final AWS4SignatureQuery query) {
 		// first get the date and time for the subsequent request, and convert
 		// to ISO 8601 format for use in signature generation
-		final var now = ZonedDateTime.now(clock);
-
-		final var dateTimeStamp = DateTimeFormatter.ofPattern(ISO8601_FORMAT).format(now);
+		final var dateTimeStamp = ISO8601_FORMATTER.format(ZonedDateTime.now(clock));
 		final String bodyHash;
 		if (query.getBody() == null) {
 			bodyHash = EMPTY_BODY_SHA256;
@@ -55,35 +77,66 @@ public class AWS4SignerVMForAuthorizationHeader extends AWS4SignerBase {
 		query.getHeaders().put("Host", query.getHost());
 
 		// Canonicalize the headers; we need the set of header names as well as
-		// the names and values to go into the signature process
-		final var canonicalizedHeaderNames = getCanonicalizedHeaderNames(query.getHeaders());
-		final var canonicalizedHeaders = getCanonicalizedHeaderString(query.getHeaders());
+		// the names and values to go into the signature process. Header names are sorted once.
+		final var headerNames = getSortedHeaderNames(query.getHeaders());
+		final var canonicalizedHeaderNames = getCanonicalizedHeaderNames(headerNames);
 
-		// if any query string parameters have been supplied, canonicalize them
-		final var canonicalizedQueryParameters = getCanonicalizedQueryString(query.getQueryParameters());
-
-		// Canonicalize the various components of the request
-		final var canonicalRequest = getCanonicalRequest(query.getPath(), query.getMethod(),
-				canonicalizedQueryParameters, canonicalizedHeaderNames, canonicalizedHeaders, bodyHash);
+		// Canonicalize the various components of the request in the reusable buffer, with
+		// the query string parameters if any
+		final var buffer = getState().builder();
+		buffer.append(query.getMethod()).append(LF).append(getCanonicalizedResourcePath(query.getPath())).append(LF);
+		appendCanonicalizedQueryString(buffer, query.getQueryParameters()).append(LF);
+		appendCanonicalizedHeaders(buffer, headerNames, query.getHeaders()).append(LF);
+		buffer.append(canonicalizedHeaderNames).append(LF).append(bodyHash);
+		final var canonicalRequestHash = appendHash(new StringBuilder(64), buffer);
 
 		// construct the string to be signed
-		final var dateStamp = DateTimeFormatter.ofPattern(DATE_FORMAT).format(now);
+		final var dateStamp = dateTimeStamp.substring(0, 8);
 		final var scope = dateStamp + "/" + query.getRegion() + "/" + query.getService() + "/" + TERMINATOR;
-		final var stringToSign = getStringToSign(dateTimeStamp, scope, canonicalRequest);
+		buffer.setLength(0);
+		buffer.append(SCHEME).append('-').append(ALGORITHM).append(LF).append(dateTimeStamp).append(LF).append(scope)
+				.append(LF).append(canonicalRequestHash);
 
-		// compute the signing key
-		final var kSecret = (SCHEME + query.getSecretKey()).getBytes();
-		final var kDate = sign(dateStamp, kSecret);
-		final var kRegion = sign(query.getRegion(), kDate);
-		final var kService = sign(query.getService(), kRegion);
-		final var kSigning = sign(TERMINATOR, kService);
-		final var signature = sign(stringToSign, kSigning);
+		// compute the signing key, then the signature
+		final var kSigning = getSigningKey(query.getSecretKey(), dateStamp, query.getRegion(), query.getService());
+		final var signature = sign(buffer, kSigning);
 
-		final var credentialsAuthorizationHeader = "Credential=" + query.getAccessKey() + "/" + scope;
-		final var signedHeadersAuthorizationHeader = "SignedHeaders=" + canonicalizedHeaderNames;
-		final var signatureAuthorizationHeader = "Signature=" + Hex.encodeHexString(signature);
+		return buffer.replace(0, buffer.length(), SCHEME).append('-').append(ALGORITHM).append(" Credential=")
+				.append(query.getAccessKey()).append('/').append(scope).append(", SignedHeaders=")
+				.append(canonicalizedHeaderNames).append(", Signature=").append(Hex.encodeHex(signature)).toString();
+	}
+
+	/**
+	 * Return the signing key derived from the secret for the given day, region and service. The derived key is cached
+	 * for the day, keyed by a hash of the secret. The keys of the previous days are dropped.
+	 *
+	 * @param secretKey The AWS secret key.
+	 * @param dateStamp The day, "yyyyMMdd" format.
+	 * @param region    The region.
+	 * @param service   The AWS service.
+	 * @return The signing key. Must not be modified.
+	 */
+	protected byte[] getSigningKey(final String secretKey, final String dateStamp, final String region,
+			final String service) {
+		final var id = new SigningKeyId(hash(secretKey), dateStamp, region, service);
+		synchronized (signingKeys) {
+			final var cached = signingKeys.get(id);
+			if (cached != null) {
+				return cached;
+			}
+		}
 
-		return SCHEME + "-" + ALGORITHM + " " + credentialsAuthorizationHeader + ", " + signedHeadersAuthorizationHeader
-				+ ", " + signatureAuthorizationHeader;
+		// Derive the key: kDate -> kRegion -> kService -> kSigning
+		final var kSecret = (SCHEME + secretKey).getBytes();
+		final var kDate = sign(dateStamp, kSecret);
+		final var kRegion = sign(region, kDate);
+		final var kService = sign(service, kRegion);
+		final var kSigning = sign(TERMINATOR, kService);
+		synchronized (signingKeys) {
+			// Day rollover
+			signingKeys.keySet().removeIf(k -> !k.date().equals(dateStamp));
+			signingKeys.put(id, kSigning);
+		}
+		return kSigning;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,294 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws.http;
+
+import lombok.extern.slf4j.Slf4j;
+import org.ligoj.app.plugin.vmaws.VmAwsPluginResource;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Isolation of the AWS regions. A circuit breaker per region and service rejects the calls immediately after
+ * consecutive failures, then lets a single probe call through once the open duration has elapsed. A bulkhead per account
+ * and region bounds the concurrent calls, so a slow region cannot hold all the threads and connections, and a throttled
+ * account cannot starve the other accounts of the same region. The bulkhead slot is only held by the HTTP call: the
+ * rate limiter wait and the throttling backoff must be done outside.
+ */
+@Component
+@Slf4j
+public class AwsCircuitBreaker implements InitializingBean {
+
+	/**
+	 * Configuration key of the consecutive failures opening the circuit of a region and a service.
+	 */
+	public static final String CONF_FAILURES = VmAwsPluginResource.KEY + ":circuit-failures";
+
+	/**
+	 * Configuration key of the duration, in seconds, an opened circuit rejects the calls before a probe call.
+	 */
+	public static final String CONF_OPEN_DURATION = VmAwsPluginResource.KEY + ":circuit-open-duration";
+
+	/**
+	 * Configuration key of the maximal concurrent calls of an account to a region.
+	 */
+	public static final String CONF_BULKHEAD = VmAwsPluginResource.KEY + ":bulkhead";
+
+	/**
+	 * Configuration key of the maximal duration, in milliseconds, a call waits for a free slot of the account and region bulkhead.
+	 */
+	public static final String CONF_BULKHEAD_WAIT = VmAwsPluginResource.KEY + ":bulkhead-wait";
+
+	/**
+	 * Polling period of a free bulkhead slot for the non-blocking calls, in milliseconds.
+	 */
+	private static final long BULKHEAD_POLL = 10;
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	@Autowired
+	protected AwsRateLimiter rateLimiter;
+
+	private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+	private final Map<String, Semaphore> bulkheads = new ConcurrentHashMap<>();
+
+	private int failures;
+	private long openDuration;
+	private int bulkhead;
+	private long bulkheadWait;
+
+	@Override
+	public void afterPropertiesSet() {
+		failures = configuration.get(CONF_FAILURES, 5);
+		openDuration = TimeUnit.SECONDS.toNanos(configuration.get(CONF_OPEN_DURATION, 30));
+		bulkhead = configuration.get(CONF_BULKHEAD, 10);
+		bulkheadWait = TimeUnit.MILLISECONDS.toNanos(configuration.get(CONF_BULKHEAD_WAIT, 1000));
+	}
+
+	/**
+	 * Circuit state.
+	 */
+	enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	/**
+	 * Circuit of a region and a service.
+	 */
+	class Circuit {
+		private final String key;
+		private State state = State.CLOSED;
+		private int consecutiveFailures;
+		private long openedAt;
+
+		Circuit(final String key) {
+			this.key = key;
+		}
+
+		/**
+		 * Indicate a call is allowed. When the open duration has elapsed, the first call becomes the probe.
+		 *
+		 * @return <code>true</code> when a call is allowed.
+		 */
+		synchronized boolean tryAcquire() {
+			if (state == State.CLOSED) {
+				return true;
+			}
+			if (state == State.OPEN && System.nanoTime() - openedAt >= openDuration) {
+				log.info("AWS circuit {} is half-open, probing", key);
+				state = State.HALF_OPEN;
+				return true;
+			}
+			// Open, or a probe is already in flight
+			return false;
+		}
+
+		synchronized void onSuccess() {
+			if (state != State.CLOSED) {
+				log.info("AWS circuit {} is closed", key);
+			}
+			state = State.CLOSED;
+			consecutiveFailures = 0;
+		}
+
+		synchronized void onFailure() {
+			consecutiveFailures++;
+			if (state == State.HALF_OPEN || state == State.CLOSED && consecutiveFailures >= failures) {
+				log.warn("AWS circuit {} is open after {} consecutive failures", key, consecutiveFailures);
+				state = State.OPEN;
+				openedAt = System.nanoTime();
+			}
+		}
+
+		/**
+		 * Give back an acquired call that has not been executed.
+		 */
+		synchronized void cancel() {
+			if (state == State.HALF_OPEN) {
+				// The next call will be the probe
+				state = State.OPEN;
+			}
+		}
+
+		synchronized State getState() {
+			return state;
+		}
+	}
+
+	/**
+	 * Return the circuit of the given region and service.
+	 *
+	 * @param region  The region.
+	 * @param service The AWS service.
+	 * @return The circuit. Created when missing.
+	 */
+	Circuit getCircuit(final String region, final String service) {
+		return circuits.computeIfAbsent(region + "/" + service, Circuit::new);
+	}
+
+	private Semaphore getBulkhead(final String account, final String region) {
+		return bulkheads.computeIfAbsent(account + "/" + region, r -> new Semaphore(bulkhead));
+	}
+
+	/**
+	 * Indicate the given response reveals an unhealthy region: no response, or a server error not caused by the
+	 * throttling.
+	 */
+	private boolean isFailure(final AwsResponse<?> response) {
+		return response.getStatus() == AwsResponse.STATUS_TRANSPORT_ERROR
+				|| response.getStatus() >= 500 && !rateLimiter.isThrottled(response);
+	}
+
+	private <T> AwsResponse<T> onResponse(final Circuit circuit, final AwsResponse<T> response) {
+		if (isFailure(response)) {
+			circuit.onFailure();
+		} else {
+			circuit.onSuccess();
+		}
+		return response;
+	}
+
+	private <T> AwsResponse<T> reject(final String region, final String service, final String cause) {
+		log.info("AWS call to {}/{} rejected: {}", region, service, cause);
+		return new AwsResponse<>(AwsResponse.STATUS_REJECTED, null, null);
+	}
+
+	/**
+	 * Execute a call in the calling thread, within the circuit of the region and service, and the account and region
+	 * bulkhead.
+	 *
+	 * @param account The account, such as the access key, sharing the bulkhead of the region.
+	 * @param region  The region.
+	 * @param service The AWS service.
+	 * @param call    The call to execute.
+	 * @param <T>     The parsed content type.
+	 * @return The received response, or a response with {@link AwsResponse#STATUS_REJECTED} status when the circuit
+	 *         is open or the bulkhead is full.
+	 */
+	public <T> AwsResponse<T> execute(final String account, final String region, final String service,
+			final Supplier<AwsResponse<T>> call) {
+		final var circuit = getCircuit(region, service);
+		if (!circuit.tryAcquire()) {
+			return reject(region, service, "open circuit");
+		}
+		final var semaphore = getBulkhead(account, region);
+		try {
+			if (!semaphore.tryAcquire(bulkheadWait, TimeUnit.NANOSECONDS)) {
+				circuit.cancel();
+				return reject(region, service, "full bulkhead");
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			circuit.cancel();
+			return reject(region, service, "interrupted");
+		}
+		try {
+			return onResponse(circuit, call.get());
+		} catch (final RuntimeException e) {
+			// The region has answered, but the content is not valid
+			circuit.onSuccess();
+			throw e;
+		} finally {
+			semaphore.release();
+		}
+	}
+
+	/**
+	 * Execute a call without blocking the calling thread, within the circuit of the region and service, and the account
+	 * and region bulkhead.
+	 *
+	 * @param account The account, such as the access key, sharing the bulkhead of the region.
+	 * @param region  The region.
+	 * @param service The AWS service.
+	 * @param call    The call to execute.
+	 * @param <T>     The parsed content type.
+	 * @return The future received response, or a response with {@link AwsResponse#STATUS_REJECTED} status when the
+	 *         circuit is open or the bulkhead is full.
+	 */
+	public <T> CompletableFuture<AwsResponse<T>> executeAsync(final String account, final String region,
+			final String service,
+			final Supplier<CompletableFuture<AwsResponse<T>>> call) {
+		final var circuit = getCircuit(region, service);
+		if (!circuit.tryAcquire()) {
+			return CompletableFuture.completedFuture(reject(region, service, "open circuit"));
+		}
+		final var semaphore = getBulkhead(account, region);
+		return acquireAsync(semaphore, System.nanoTime() + bulkheadWait).thenCompose(acquired -> {
+			if (!acquired) {
+				circuit.cancel();
+				return CompletableFuture.completedFuture(reject(region, service, "full bulkhead"));
+			}
+			try {
+				return call.get().whenComplete((r, e) -> semaphore.release()).handle((r, e) -> {
+					if (e != null) {
+						// The region has answered, but the content is not valid
+						circuit.onSuccess();
+						throw e instanceof CompletionException ce ? ce : new CompletionException(e);
+					}
+					return onResponse(circuit, r);
+				});
+			} catch (final RuntimeException e) {
+				semaphore.release();
+				circuit.cancel();
+				throw e;
+			}
+		});
+	}
+
+	/**
+	 * Acquire a bulkhead slot without blocking the calling thread.
+	 */
+	private CompletableFuture<Boolean> acquireAsync(final Semaphore semaphore, final long deadline) {
+		if (semaphore.tryAcquire()) {
+			return CompletableFuture.completedFuture(true);
+		}
+		if (System.nanoTime() >= deadline) {
+			return CompletableFuture.completedFuture(false);
+		}
+		return CompletableFuture
+				.runAsync(() -> {
+					// Nothing to do, only delayed
+				}, CompletableFuture.delayedExecutor(BULKHEAD_POLL, TimeUnit.MILLISECONDS))
+				.thenCompose(v -> acquireAsync(semaphore, deadline));
+	}
+
+	/**
+	 * Close all the circuits, forget the failures and release the bulkheads.
+	 */
+	public void reset() {
+		circuits.clear();
+		bulkheads.clear();
+	}
+}
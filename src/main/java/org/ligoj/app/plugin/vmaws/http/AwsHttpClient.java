@@ -0,0 +1,465 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws.http;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.ConnectionKeepAliveStrategy;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.DefaultConnectionKeepAliveStrategy;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.DefaultThreadFactory;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
+import org.apache.hc.core5.http.nio.AsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.support.classic.AbstractClassicEntityConsumer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.ligoj.app.plugin.vmaws.VmAwsPluginResource;
+import org.ligoj.bootstrap.core.curl.CurlRequest;
+import org.ligoj.bootstrap.core.resource.TechnicalException;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Shared HTTP client used by all AWS API calls. Connections are pooled per host and kept alive, so consecutive calls to
+ * the same EC2/STS endpoint do not pay a new TCP and TLS handshake. Requests can be executed either by the calling
+ * thread, either by a non-blocking client completing a {@link CompletableFuture}. Succeeded response bodies are handed
+ * to a {@link ResponseParser} as a stream while they are received, never as a whole. Compressed responses are negotiated, and decompressed
+ * while streamed.
+ */
+@Component
+@Slf4j
+public class AwsHttpClient implements InitializingBean, DisposableBean {
+
+	/**
+	 * Configuration key of the maximum pooled connections, all hosts included.
+	 */
+	public static final String CONF_MAX_CONNECTIONS = VmAwsPluginResource.KEY + ":http-max-connections";
+
+	/**
+	 * Configuration key of the maximum pooled connections per host.
+	 */
+	public static final String CONF_MAX_CONNECTIONS_PER_HOST = VmAwsPluginResource.KEY
+			+ ":http-max-connections-per-host";
+
+	/**
+	 * Configuration key of the duration, in seconds, after which an idle pooled connection is evicted.
+	 */
+	public static final String CONF_IDLE_TIMEOUT = VmAwsPluginResource.KEY + ":http-idle-timeout";
+
+	/**
+	 * Configuration key of the maximal duration, in seconds, a connection is kept alive between two requests.
+	 */
+	public static final String CONF_KEEP_ALIVE = VmAwsPluginResource.KEY + ":http-keep-alive";
+
+	/**
+	 * Configuration key of the connection timeout, in seconds.
+	 */
+	public static final String CONF_CONNECT_TIMEOUT = VmAwsPluginResource.KEY + ":http-connect-timeout";
+
+	/**
+	 * Configuration key of the response timeout, in seconds.
+	 */
+	public static final String CONF_RESPONSE_TIMEOUT = VmAwsPluginResource.KEY + ":http-response-timeout";
+
+	/**
+	 * Content type of AWS Query API requests.
+	 */
+	private static final ContentType FORM_CONTENT_TYPE = ContentType.create("application/x-www-form-urlencoded",
+			StandardCharsets.UTF_8);
+
+	/**
+	 * Accepted response encodings. The repetitive AWS XML responses compress very well.
+	 */
+	private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+	/**
+	 * Size of the buffer between the I/O reactor and the parsing thread of a response body.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	private PoolingHttpClientConnectionManager connectionManager;
+
+	private CloseableHttpClient httpClient;
+
+	private PoolingAsyncClientConnectionManager asyncConnectionManager;
+
+	private CloseableHttpAsyncClient asyncClient;
+
+	/**
+	 * Threads parsing the response bodies of the non-blocking client while they are received.
+	 */
+	private ExecutorService parsers;
+
+	private final LongAdder responses = new LongAdder();
+	private final LongAdder compressedResponses = new LongAdder();
+	private final LongAdder compressedBytes = new LongAdder();
+	private final LongAdder decompressedBytes = new LongAdder();
+	private final LongAdder identityBytes = new LongAdder();
+
+	/**
+	 * Input stream counting the read bytes.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private final LongAdder counter;
+
+		private CountingInputStream(final InputStream input, final LongAdder counter) {
+			super(input);
+			this.counter = counter;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final var read = super.read();
+			if (read >= 0) {
+				counter.increment();
+			}
+			return read;
+		}
+
+		@Override
+		public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+			final var read = super.read(buffer, offset, length);
+			if (read > 0) {
+				counter.add(read);
+			}
+			return read;
+		}
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		final var keepAlive = TimeValue.ofSeconds(configuration.get(CONF_KEEP_ALIVE, 60));
+		final var idle = TimeValue.ofSeconds(configuration.get(CONF_IDLE_TIMEOUT, 30));
+		final var maxTotal = configuration.get(CONF_MAX_CONNECTIONS, 100);
+		final var maxPerHost = configuration.get(CONF_MAX_CONNECTIONS_PER_HOST, 20);
+		final var connectionConfig = ConnectionConfig.custom()
+				.setConnectTimeout(Timeout.ofSeconds(configuration.get(CONF_CONNECT_TIMEOUT, 10)))
+				.setSocketTimeout(Timeout.ofSeconds(configuration.get(CONF_RESPONSE_TIMEOUT, 30)))
+				.setValidateAfterInactivity(TimeValue.ofSeconds(2)).build();
+		final var requestConfig = RequestConfig.custom()
+				.setResponseTimeout(Timeout.ofSeconds(configuration.get(CONF_RESPONSE_TIMEOUT, 30))).build();
+		final ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+			// Honor the server hint, but never keep a connection longer than the configured duration
+			final var hint = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return hint.compareTo(keepAlive) < 0 ? hint : keepAlive;
+		};
+
+		// Blocking client
+		connectionManager = PoolingHttpClientConnectionManagerBuilder.create().setMaxConnTotal(maxTotal)
+				.setMaxConnPerRoute(maxPerHost).setDefaultConnectionConfig(connectionConfig).build();
+		httpClient = HttpClients.custom().setConnectionManager(connectionManager).disableCookieManagement()
+				.disableContentCompression().setDefaultRequestConfig(requestConfig).setKeepAliveStrategy(keepAliveStrategy)
+				.evictExpiredConnections().evictIdleConnections(idle).build();
+
+		// Non-blocking client
+		asyncConnectionManager = PoolingAsyncClientConnectionManagerBuilder.create().setMaxConnTotal(maxTotal)
+				.setMaxConnPerRoute(maxPerHost).setDefaultConnectionConfig(connectionConfig).build();
+		asyncClient = HttpAsyncClients.custom().setConnectionManager(asyncConnectionManager)
+				.disableCookieManagement().setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy(keepAliveStrategy).evictExpiredConnections().evictIdleConnections(idle)
+				.build();
+		asyncClient.start();
+
+		// A parsing thread per connection, a response body being parsed while it is received
+		parsers = Executors.newFixedThreadPool(maxTotal, new DefaultThreadFactory("aws-response", true));
+	}
+
+	@Override
+	public void destroy() throws IOException {
+		httpClient.close();
+		asyncClient.close();
+		parsers.shutdownNow();
+	}
+
+	/**
+	 * Execute the given request with a pooled connection. A succeeded response body is streamed from the connection
+	 * straight to the given parser, without being buffered.
+	 *
+	 * @param request The request to execute.
+	 * @param parser  The parser of a succeeded response body.
+	 * @param <T>     The parsed content type.
+	 * @return The received response, or a response with {@link AwsResponse#STATUS_TRANSPORT_ERROR} status.
+	 */
+	public <T> AwsResponse<T> execute(final CurlRequest request, final ResponseParser<T> parser) {
+		final var builder = ClassicRequestBuilder.create(request.getMethod()).setUri(request.getUrl());
+		request.getHeaders().forEach(builder::addHeader);
+		builder.addHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING);
+		if (request.getContent() != null) {
+			builder.setEntity(request.getContent(), FORM_CONTENT_TYPE);
+		}
+		try {
+			return httpClient.execute(builder.build(), response -> {
+				final var entity = response.getEntity();
+				if (entity == null) {
+					return onError(request, response.getCode(), null);
+				}
+				try (var input = decode(response, entity.getContent())) {
+					if (isSuccess(response.getCode())) {
+						return new AwsResponse<>(response.getCode(), parse(parser, input), null);
+					}
+					return onError(request, response.getCode(), readText(input));
+				}
+			});
+		} catch (final IOException e) {
+			log.warn("AWS request {} {} failed", request.getMethod(), request.getUrl(), e);
+			return new AwsResponse<>(AwsResponse.STATUS_TRANSPORT_ERROR, null, null);
+		}
+	}
+
+	/**
+	 * Execute the given request with the non-blocking client. The calling thread is released immediately. The
+	 * response body is streamed from the I/O reactor to a parsing thread through a bounded buffer, so it is parsed
+	 * while it is received and never held as a whole, neither as bytes nor as a text.
+	 *
+	 * @param request The request to execute.
+	 * @param parser  The parser of a succeeded response body.
+	 * @param <T>     The parsed content type.
+	 * @return The future received response. Never completed exceptionally by a transport failure, a response with
+	 *         {@link AwsResponse#STATUS_TRANSPORT_ERROR} status is used instead.
+	 */
+	public <T> CompletableFuture<AwsResponse<T>> executeAsync(final CurlRequest request,
+			final ResponseParser<T> parser) {
+		final var builder = SimpleRequestBuilder.create(request.getMethod()).setUri(request.getUrl());
+		// "Host" is computed from the URL, and is not allowed by all HTTP versions
+		request.getHeaders().entrySet().stream().filter(h -> !HttpHeaders.HOST.equalsIgnoreCase(h.getKey()))
+				.forEach(h -> builder.addHeader(h.getKey(), h.getValue()));
+		builder.addHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING);
+		if (request.getContent() != null) {
+			builder.setBody(request.getContent(), FORM_CONTENT_TYPE);
+		}
+		final var future = new CompletableFuture<AwsResponse<T>>();
+		asyncClient.execute(SimpleRequestProducer.create(builder.build()), new StreamingResponseConsumer<>(request,
+				parser), new FutureCallback<>() {
+					@Override
+					public void completed(final AwsResponse<T> response) {
+						future.complete(response);
+					}
+
+					@Override
+					public void failed(final Exception e) {
+						if (e instanceof TechnicalException) {
+							// Parse failure
+							future.completeExceptionally(e);
+						} else {
+							log.warn("AWS request {} {} failed", request.getMethod(), request.getUrl(), e);
+							future.complete(new AwsResponse<>(AwsResponse.STATUS_TRANSPORT_ERROR, null, null));
+						}
+					}
+
+					@Override
+					public void cancelled() {
+						future.cancel(false);
+					}
+				});
+		return future;
+	}
+
+	/**
+	 * Response consumer handing the body stream to the parser, run by a parsing thread. The I/O reactor fills a
+	 * bounded buffer, and stops reading the connection while the buffer is full.
+	 *
+	 * @param <T> The parsed content type.
+	 */
+	private class StreamingResponseConsumer<T> implements AsyncResponseConsumer<AwsResponse<T>> {
+		private final CurlRequest request;
+		private final ResponseParser<T> parser;
+		private volatile AsyncEntityConsumer<AwsResponse<T>> entityConsumer;
+
+		private StreamingResponseConsumer(final CurlRequest request, final ResponseParser<T> parser) {
+			this.request = request;
+			this.parser = parser;
+		}
+
+		@Override
+		public void consumeResponse(final HttpResponse response, final EntityDetails entityDetails,
+				final HttpContext context, final FutureCallback<AwsResponse<T>> resultCallback)
+				throws HttpException, IOException {
+			if (entityDetails == null) {
+				resultCallback.completed(onError(request, response.getCode(), null));
+				return;
+			}
+			entityConsumer = new AbstractClassicEntityConsumer<>(BUFFER_SIZE, parsers) {
+				@Override
+				protected AwsResponse<T> consumeData(final ContentType contentType, final InputStream inputStream)
+						throws IOException {
+					try (var input = decode(response, inputStream)) {
+						if (isSuccess(response.getCode())) {
+							return new AwsResponse<>(response.getCode(), parse(parser, input), null);
+						}
+						return onError(request, response.getCode(), readText(input));
+					}
+				}
+			};
+			entityConsumer.streamStart(entityDetails, resultCallback);
+		}
+
+		@Override
+		public void informationResponse(final HttpResponse response, final HttpContext context) {
+			// Nothing to do
+		}
+
+		@Override
+		public void updateCapacity(final CapacityChannel capacityChannel) throws IOException {
+			entityConsumer.updateCapacity(capacityChannel);
+		}
+
+		@Override
+		public void consume(final ByteBuffer src) throws IOException {
+			entityConsumer.consume(src);
+		}
+
+		@Override
+		public void streamEnd(final List<? extends Header> trailers) throws HttpException, IOException {
+			entityConsumer.streamEnd(trailers);
+		}
+
+		@Override
+		public void failed(final Exception cause) {
+			if (entityConsumer != null) {
+				entityConsumer.failed(cause);
+			}
+		}
+
+		@Override
+		public void releaseResources() {
+			if (entityConsumer != null) {
+				entityConsumer.releaseResources();
+			}
+		}
+	}
+
+	/**
+	 * Return the decoded body stream according to the response "Content-Encoding", and measure the transferred and
+	 * the decoded bytes.
+	 *
+	 * @param response The response holding the headers.
+	 * @param input    The raw body stream.
+	 * @return The decoded body stream.
+	 * @throws IOException When the compressed stream header cannot be read.
+	 */
+	InputStream decode(final HttpResponse response, final InputStream input) throws IOException {
+		responses.increment();
+		final var encoding = Optional.ofNullable(response.getFirstHeader(HttpHeaders.CONTENT_ENCODING))
+				.map(h -> h.getValue().trim().toLowerCase(Locale.ENGLISH)).orElse("identity");
+		return switch (encoding) {
+		case "gzip", "x-gzip" -> {
+			compressedResponses.increment();
+			yield new CountingInputStream(new GZIPInputStream(new CountingInputStream(input, compressedBytes)),
+					decompressedBytes);
+		}
+		case "deflate" -> {
+			compressedResponses.increment();
+			yield new CountingInputStream(new InflaterInputStream(new CountingInputStream(input, compressedBytes)),
+					decompressedBytes);
+		}
+		default -> new CountingInputStream(input, identityBytes);
+		};
+	}
+
+	private String readText(final InputStream input) throws IOException {
+		return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	private boolean isSuccess(final int status) {
+		return status >= 200 && status < 300;
+	}
+
+	/**
+	 * Parse a succeeded response body.
+	 */
+	private <T> T parse(final ResponseParser<T> parser, final InputStream input) {
+		try {
+			return parser.parse(input);
+		} catch (final Exception e) {
+			throw new TechnicalException("aws-response-parse", e);
+		}
+	}
+
+	/**
+	 * Handle a received response without parsable content.
+	 */
+	private <T> AwsResponse<T> onError(final CurlRequest request, final int status, final String body) {
+		if (!isSuccess(status)) {
+			log.info("AWS request {} {} failed with status {}: {}", request.getMethod(), request.getUrl(), status,
+					body);
+		}
+		return new AwsResponse<>(status, null, body);
+	}
+
+	/**
+	 * Return the connection pool statistics, globally and per host, and the transfer statistics.
+	 *
+	 * @return The connection pool statistics.
+	 */
+	public AwsHttpPoolStats getStats() {
+		final var stats = toStats(connectionManager.getTotalStats());
+		stats.setHosts(new TreeMap<>());
+		connectionManager.getRoutes().forEach(r -> stats.getHosts().put(r.getTargetHost().toHostString(),
+				toStats(connectionManager.getStats(r))));
+		stats.setAsync(toStats(asyncConnectionManager.getTotalStats()));
+		stats.getAsync().setHosts(new TreeMap<>());
+		asyncConnectionManager.getRoutes().forEach(r -> stats.getAsync().getHosts()
+				.put(r.getTargetHost().toHostString(), toStats(asyncConnectionManager.getStats(r))));
+		final var transfer = new AwsHttpTransferStats();
+		transfer.setResponses(responses.sum());
+		transfer.setCompressedResponses(compressedResponses.sum());
+		transfer.setCompressedBytes(compressedBytes.sum());
+		transfer.setDecompressedBytes(decompressedBytes.sum());
+		transfer.setIdentityBytes(identityBytes.sum());
+		stats.setTransfer(transfer);
+		return stats;
+	}
+
+	private AwsHttpPoolStats toStats(final PoolStats poolStats) {
+		final var stats = new AwsHttpPoolStats();
+		stats.setLeased(poolStats.getLeased());
+		stats.setAvailable(poolStats.getAvailable());
+		stats.setPending(poolStats.getPending());
+		stats.setMax(poolStats.getMax());
+		return stats;
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws.http;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Map;
+
+/**
+ * AWS HTTP connection pool statistics.
+ */
+@Getter
+@Setter
+@JsonInclude(Include.NON_NULL)
+public class AwsHttpPoolStats {
+
+	/**
+	 * Connections currently used by a request.
+	 */
+	private int leased;
+
+	/**
+	 * Idle connections ready to be reused.
+	 */
+	private int available;
+
+	/**
+	 * Requests waiting for a connection.
+	 */
+	private int pending;
+
+	/**
+	 * Maximum connections.
+	 */
+	private int max;
+
+	/**
+	 * Statistics per host. Only set for the global statistics.
+	 */
+	private Map<String, AwsHttpPoolStats> hosts;
+
+	/**
+	 * Statistics of the non-blocking client pool. Only set for the global statistics.
+	 */
+	private AwsHttpPoolStats async;
+
+	/**
+	 * Transfer statistics of both clients. Only set for the global statistics.
+	 */
+	private AwsHttpTransferStats transfer;
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws.http;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * AWS HTTP response transfer statistics, since the start of the client.
+ */
+@Getter
+@Setter
+public class AwsHttpTransferStats {
+
+	/**
+	 * Received responses.
+	 */
+	private long responses;
+
+	/**
+	 * Received responses with a compressed body.
+	 */
+	private long compressedResponses;
+
+	/**
+	 * Bytes transferred by the compressed bodies.
+	 */
+	private long compressedBytes;
+
+	/**
+	 * Bytes of the compressed bodies, once decompressed.
+	 */
+	private long decompressedBytes;
+
+	/**
+	 * Bytes transferred by the not compressed bodies.
+	 */
+	private long identityBytes;
+}
@@ -0,0 +1,324 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws.http;
+
+import lombok.extern.slf4j.Slf4j;
+import org.ligoj.app.plugin.vmaws.VmAwsPluginResource;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Client side rate limiter of AWS API calls. A token bucket is maintained per access key and region. Its refill rate
+ * is lowered each time AWS throttles a request, and slowly restored on success. Throttled requests are retried with a
+ * jittered exponential backoff, within a retry budget shared by all calls of the same bucket.
+ *
+ * @see <a href="https://docs.aws.amazon.com/AWSEC2/latest/APIReference/throttling.html">Request throttling</a>
+ */
+@Component
+@Slf4j
+public class AwsRateLimiter implements InitializingBean {
+
+	/**
+	 * Configuration key of the maximal request rate, per second, for an access key and a region.
+	 */
+	public static final String CONF_RATE = VmAwsPluginResource.KEY + ":rate";
+
+	/**
+	 * Configuration key of the maximal burst of requests for an access key and a region.
+	 */
+	public static final String CONF_BURST = VmAwsPluginResource.KEY + ":burst";
+
+	/**
+	 * Configuration key of the maximal retries of a throttled request.
+	 */
+	public static final String CONF_RETRIES = VmAwsPluginResource.KEY + ":retries";
+
+	/**
+	 * Configuration key of the retry budget for an access key and a region. Each retry consumes one unit, each success
+	 * gives back a tenth of unit.
+	 */
+	public static final String CONF_RETRY_BUDGET = VmAwsPluginResource.KEY + ":retry-budget";
+
+	/**
+	 * Configuration key of the maximal duration, in seconds, a request waits for the rate limiter. Beyond, the
+	 * request is rejected rather than queued.
+	 */
+	public static final String CONF_MAX_WAIT = VmAwsPluginResource.KEY + ":rate-max-wait";
+
+	/**
+	 * AWS error codes meaning the request has been throttled.
+	 */
+	private static final Set<String> THROTTLING_CODES = Set.of("RequestLimitExceeded", "Throttling",
+			"ThrottlingException", "ThrottledException", "RequestThrottled", "RequestThrottledException",
+			"TooManyRequestsException", "EC2ThrottledException", "SlowDown", "BandwidthLimitExceeded");
+
+	/**
+	 * Lowest refill rate, per second, reached after successive throttling.
+	 */
+	private static final double MIN_RATE = 0.5d;
+
+	/**
+	 * Backoff base delay, in milliseconds.
+	 */
+	private static final long BASE_DELAY = 100;
+
+	/**
+	 * Backoff maximal delay, in milliseconds.
+	 */
+	private static final long MAX_DELAY = 20_000;
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+	private int rate;
+	private int burst;
+	private int retries;
+	private int retryBudget;
+	private long maxWait;
+
+	@Override
+	public void afterPropertiesSet() {
+		rate = configuration.get(CONF_RATE, 20);
+		burst = configuration.get(CONF_BURST, 50);
+		retries = configuration.get(CONF_RETRIES, 4);
+		retryBudget = configuration.get(CONF_RETRY_BUDGET, 20);
+		maxWait = TimeUnit.SECONDS.toNanos(configuration.get(CONF_MAX_WAIT, 30));
+	}
+
+	/**
+	 * Token bucket with an adaptive refill rate, and a retry budget.
+	 */
+	static class Bucket {
+		private final double maxRate;
+		private final double capacity;
+		private final double retryCapacity;
+		private double rate;
+		private double tokens;
+		private double retryTokens;
+		private long last = System.nanoTime();
+
+		Bucket(final double maxRate, final double capacity, final double retryCapacity) {
+			this.maxRate = maxRate;
+			this.rate = maxRate;
+			this.capacity = capacity;
+			this.tokens = capacity;
+			this.retryCapacity = retryCapacity;
+			this.retryTokens = retryCapacity;
+		}
+
+		/**
+		 * Take a token and return the delay to wait before using it. No token is taken when the delay would exceed
+		 * the given maximal wait, so the queue of the waiting requests is bounded.
+		 *
+		 * @param maxWait The maximal delay in nanoseconds.
+		 * @return The delay in nanoseconds to wait before sending the request, or <code>-1</code> when the delay would
+		 *         exceed the maximal wait.
+		 */
+		synchronized long acquire(final long maxWait) {
+			final var now = System.nanoTime();
+			final var available = Math.min(capacity, tokens + (now - last) * rate / 1e9d);
+			last = now;
+			final var wait = available >= 1 ? 0 : (long) ((1 - available) * 1e9d / rate);
+			if (wait > maxWait) {
+				tokens = available;
+				return -1;
+			}
+			tokens = available - 1;
+			return wait;
+		}
+
+		/**
+		 * Additive increase of the rate.
+		 */
+		synchronized void onSuccess() {
+			rate = Math.min(maxRate, rate + maxRate / 50d);
+			retryTokens = Math.min(retryCapacity, retryTokens + 0.1d);
+		}
+
+		/**
+		 * Multiplicative decrease of the rate, and drop of the burst tokens.
+		 */
+		synchronized void onThrottled() {
+			rate = Math.max(MIN_RATE, rate / 2d);
+			tokens = Math.min(tokens, 0);
+		}
+
+		/**
+		 * Consume a retry unit from the budget.
+		 *
+		 * @return <code>true</code> when the budget allows a retry.
+		 */
+		synchronized boolean tryRetry() {
+			if (retryTokens >= 1) {
+				retryTokens--;
+				return true;
+			}
+			return false;
+		}
+
+		synchronized double getRate() {
+			return rate;
+		}
+	}
+
+	/**
+	 * Return the bucket of the given key.
+	 *
+	 * @param key The access key and region.
+	 * @return The bucket of the given key. Created when missing.
+	 */
+	Bucket getBucket(final String key) {
+		return buckets.computeIfAbsent(key, k -> new Bucket(rate, burst, retryBudget));
+	}
+
+	/**
+	 * Indicate the given response has been throttled by AWS.
+	 *
+	 * @param response The response to check.
+	 * @return <code>true</code> when the given response has been throttled by AWS.
+	 */
+	protected boolean isThrottled(final AwsResponse<?> response) {
+		final var code = response.getErrorCode();
+		return response.getStatus() == 429 || code != null && THROTTLING_CODES.contains(code);
+	}
+
+	/**
+	 * Restore the rate and the retry budget when AWS has answered the request without throttling it. A request not
+	 * sent, not answered, or failed by AWS does not tell the region is healthy.
+	 */
+	private void onAnswered(final Bucket bucket, final AwsResponse<?> response) {
+		if (response.getStatus() >= 200 && response.getStatus() < 500) {
+			bucket.onSuccess();
+		}
+	}
+
+	/**
+	 * Return the backoff delay with a full jitter.
+	 *
+	 * @param attempt The zero based retry attempt.
+	 * @return The delay in nanoseconds.
+	 */
+	private long backoff(final int attempt) {
+		final var ceil = Math.min(MAX_DELAY, BASE_DELAY << Math.min(attempt, 16));
+		return TimeUnit.MILLISECONDS.toNanos(ThreadLocalRandom.current().nextLong(ceil + 1));
+	}
+
+	/**
+	 * Execute a call in the calling thread, waiting for the rate limiter and retrying it while throttled. Each attempt
+	 * is a new call, so a signed request is signed after its wait.
+	 *
+	 * @param key  The access key and region.
+	 * @param call The call to execute.
+	 * @param <T>  The parsed content type.
+	 * @return The last received response, or a response with {@link AwsResponse#STATUS_REJECTED} status when the wait
+	 *         for the rate limiter would be too long.
+	 */
+	public <T> AwsResponse<T> execute(final String key, final Supplier<AwsResponse<T>> call) {
+		final var bucket = getBucket(key);
+		var attempt = 0;
+		while (true) {
+			final var wait = bucket.acquire(maxWait);
+			if (wait < 0) {
+				return reject(key);
+			}
+			sleep(wait);
+			final var response = call.get();
+			if (!isThrottled(response)) {
+				onAnswered(bucket, response);
+				return response;
+			}
+			bucket.onThrottled();
+			if (!canRetry(key, bucket, attempt) || !sleep(backoff(attempt++))) {
+				return response;
+			}
+		}
+	}
+
+	/**
+	 * Execute a call without blocking the calling thread, delaying it for the rate limiter and retrying it while
+	 * throttled. Each attempt is a new call, so a signed request is signed after its delay.
+	 *
+	 * @param key  The access key and region.
+	 * @param call The call to execute.
+	 * @param <T>  The parsed content type.
+	 * @return The future last received response, or a response with {@link AwsResponse#STATUS_REJECTED} status when
+	 *         the wait for the rate limiter would be too long.
+	 */
+	public <T> CompletableFuture<AwsResponse<T>> executeAsync(final String key,
+			final Supplier<CompletableFuture<AwsResponse<T>>> call) {
+		return executeAsync(key, getBucket(key), call, 0);
+	}
+
+	private <T> CompletableFuture<AwsResponse<T>> executeAsync(final String key, final Bucket bucket,
+			final Supplier<CompletableFuture<AwsResponse<T>>> call, final int attempt) {
+		final var wait = bucket.acquire(maxWait);
+		if (wait < 0) {
+			return CompletableFuture.completedFuture(reject(key));
+		}
+		return delay(wait).thenCompose(v -> call.get()).thenCompose(response -> {
+			if (!isThrottled(response)) {
+				onAnswered(bucket, response);
+				return CompletableFuture.completedFuture(response);
+			}
+			bucket.onThrottled();
+			if (!canRetry(key, bucket, attempt)) {
+				return CompletableFuture.completedFuture(response);
+			}
+			return delay(backoff(attempt)).thenCompose(v -> executeAsync(key, bucket, call, attempt + 1));
+		});
+	}
+
+	private <T> AwsResponse<T> reject(final String key) {
+		log.warn("AWS request rejected for {}, too many requests are waiting for the rate limiter", key);
+		return new AwsResponse<>(AwsResponse.STATUS_REJECTED, null, null);
+	}
+
+	private boolean canRetry(final String key, final Bucket bucket, final int attempt) {
+		if (attempt < retries && bucket.tryRetry()) {
+			log.info("AWS request throttled for {}, retry {}/{} with rate {}/s", key, attempt + 1, retries,
+					bucket.getRate());
+			return true;
+		}
+		log.warn("AWS request throttled for {}, no more retry", key);
+		return false;
+	}
+
+	private CompletableFuture<Void> delay(final long nanos) {
+		if (nanos <= 0) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return CompletableFuture.runAsync(() -> {
+			// Nothing to do, only delayed
+		}, CompletableFuture.delayedExecutor(nanos, TimeUnit.NANOSECONDS));
+	}
+
+	/**
+	 * Sleep the given delay.
+	 *
+	 * @return <code>false</code> when interrupted.
+	 */
+	private boolean sleep(final long nanos) {
+		if (nanos > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(nanos);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws.http;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.regex.Pattern;
+
+/**
+ * AWS HTTP response.
+ *
+ * @param <T> The parsed content type.
+ */
+@Getter
+@AllArgsConstructor
+public class AwsResponse<T> {
+
+	/**
+	 * Status used when no response has been received.
+	 */
+	public static final int STATUS_TRANSPORT_ERROR = -1;
+
+	/**
+	 * Status used when the request has not been sent to protect an unhealthy or overloaded region.
+	 */
+	public static final int STATUS_REJECTED = -2;
+
+	/**
+	 * AWS error code pattern in an error response: <code>&lt;Code&gt;RequestLimitExceeded&lt;/Code&gt;</code>
+	 */
+	private static final Pattern ERROR_CODE = Pattern.compile("<Code>([^<]+)</Code>");
+
+	/**
+	 * HTTP status code, or {@link #STATUS_TRANSPORT_ERROR}.
+	 */
+	private final int status;
+
+	/**
+	 * Parsed content of a succeeded response. May be <code>null</code>.
+	 */
+	private final T content;
+
+	/**
+	 * Body of a failed response. May be <code>null</code>.
+	 */
+	private final String error;
+
+	/**
+	 * Indicate the response status is 2xx.
+	 *
+	 * @return <code>true</code> when the response status is 2xx.
+	 */
+	public boolean isSuccess() {
+		return status >= 200 && status < 300;
+	}
+
+	/**
+	 * Return the first AWS error code of this response.
+	 *
+	 * @return The first AWS error code of this response, or <code>null</code>.
+	 */
+	public String getErrorCode() {
+		if (error == null) {
+			return null;
+		}
+		final var matcher = ERROR_CODE.matcher(error);
+		return matcher.find() ? matcher.group(1) : null;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws.http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collect the items submitted within a short window for the same key, and serve them with a single batch call. Each
+ * caller keeps its own future of its own item.
+ *
+ * @param <K> The batch key type.
+ * @param <I> The item type.
+ * @param <V> The item result type.
+ */
+public class MicroBatcher<K, I, V> {
+
+	/**
+	 * Batch collecting the items during its window.
+	 */
+	private class Batch {
+		private final Map<I, CompletableFuture<V>> items = new LinkedHashMap<>();
+		private boolean closed;
+	}
+
+	private final Map<K, Batch> pending = new ConcurrentHashMap<>();
+
+	/**
+	 * Submit an item to the batch of the given key. The first item of a batch opens its window, the batch call is
+	 * executed at the end of this window with all the items collected meanwhile.
+	 *
+	 * @param key    The batch key.
+	 * @param item   The item to submit.
+	 * @param window The collecting window, in milliseconds.
+	 * @param call   The batch call executed at the end of the window when this item opens the batch. Returns the
+	 *               results by item, an item without result completes with <code>null</code>.
+	 * @return The future result of the given item.
+	 */
+	public CompletableFuture<V> submit(final K key, final I item, final long window,
+			final Function<Set<I>, CompletableFuture<Map<I, V>>> call) {
+		while (true) {
+			final var batch = pending.computeIfAbsent(key, k -> {
+				final var created = new Batch();
+				CompletableFuture.delayedExecutor(window, TimeUnit.MILLISECONDS).execute(() -> flush(k, created, call));
+				return created;
+			});
+			synchronized (batch) {
+				if (!batch.closed) {
+					return batch.items.computeIfAbsent(item, i -> new CompletableFuture<>());
+				}
+			}
+			// This batch is being flushed, join the next one
+		}
+	}
+
+	/**
+	 * Close the given batch and execute its call.
+	 */
+	private void flush(final K key, final Batch batch, final Function<Set<I>, CompletableFuture<Map<I, V>>> call) {
+		pending.remove(key, batch);
+		synchronized (batch) {
+			batch.closed = true;
+		}
+		try {
+			call.apply(batch.items.keySet()).whenComplete((r, e) -> batch.items.forEach((i, f) -> {
+				if (e == null) {
+					f.complete(r.get(i));
+				} else {
+					f.completeExceptionally(e);
+				}
+			}));
+		} catch (final RuntimeException e) {
+			batch.items.values().forEach(f -> f.completeExceptionally(e));
+		}
+	}
+
+	/**
+	 * Return the amount of batches collecting items.
+	 *
+	 * @return The amount of batches collecting items.
+	 */
+	public int size() {
+		return pending.size();
+	}
+}
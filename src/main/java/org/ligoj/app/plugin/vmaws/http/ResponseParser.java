@@ -0,0 +1,30 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws.http;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parser of a succeeded AWS response, fed with the response body stream.
+ *
+ * @param <T> The parsed content type.
+ */
+@FunctionalInterface
+public interface ResponseParser<T> {
+
+	/**
+	 * Parser returning the raw response text.
+	 */
+	ResponseParser<String> TEXT = input -> new String(input.readAllBytes(), StandardCharsets.UTF_8);
+
+	/**
+	 * Parse the response body.
+	 *
+	 * @param input The response body stream. Closed by the caller.
+	 * @return The parsed content.
+	 * @throws Exception When the content cannot be read or parsed.
+	 */
+	T parse(InputStream input) throws Exception; // NOSONAR
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws.http;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * In-memory values loaded without blocking the calling thread. A cached value is served while it is reloaded in
+ * background once the refresh duration has elapsed (stale-while-revalidate), and is no more served once the time to live
+ * has elapsed. The concurrent loads of the same key are coalesced, and a load started before the invalidation of its
+ * key is neither stored nor joined by the next requests. The least recently used values are evicted beyond the maximal
+ * size.
+ *
+ * @param <K> The key type.
+ * @param <V> The value type. Should be immutable or thread safe since shared by all callers.
+ */
+public class RevalidatingCache<K, V> {
+
+	/**
+	 * In-flight loads, shared by the concurrent requests of the same key.
+	 */
+	private final SingleFlight<K, V> loads = new SingleFlight<>();
+
+	/**
+	 * Incremented by each load and each invalidation.
+	 */
+	private final AtomicLong generation = new AtomicLong();
+
+	/**
+	 * Generation of the last invalidation, by key, so a load of this key started before is not stored. Forgotten once
+	 * all the loads started before have completed. Guarded by {@link #entries}.
+	 */
+	private final Map<K, Long> invalidations = new HashMap<>();
+
+	/**
+	 * Start generations of the loads in flight. Guarded by {@link #entries}.
+	 */
+	private final SortedSet<Long> started = new TreeSet<>();
+
+	/**
+	 * Cached values in access order. Guarded by itself.
+	 */
+	private final Map<K, Entry<V>> entries;
+
+	/**
+	 * Generation of the last clear, so a load started before is not stored. Guarded by {@link #entries}.
+	 */
+	private long cleared;
+
+	/**
+	 * A loaded value.
+	 */
+	private record Entry<V>(V value, long loadedAt) {
+	}
+
+	/**
+	 * Cache constructor.
+	 *
+	 * @param size The maximal cached values. When zero or negative, the size is not bounded.
+	 */
+	public RevalidatingCache(final int size) {
+		entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<K, Entry<V>> eldest) {
+				return size > 0 && size() > size;
+			}
+		};
+	}
+
+	/**
+	 * Return the cached value. A stale value is returned and reloaded in background. A missing or expired value is
+	 * loaded.
+	 *
+	 * @param key     The value key.
+	 * @param refresh The duration, in nanoseconds, after which a served value is reloaded in background.
+	 * @param ttl     The duration, in nanoseconds, after which a value is no more served.
+	 * @param loader  The value loader. The loaded value is not stored when <code>null</code>.
+	 * @return The future value. Already completed when a value is cached.
+	 */
+	public CompletableFuture<V> get(final K key, final long refresh, final long ttl,
+			final Supplier<CompletableFuture<V>> loader) {
+		final Entry<V> entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+		}
+		final var age = entry == null ? Long.MAX_VALUE : System.nanoTime() - entry.loadedAt();
+		if (age >= ttl) {
+			synchronized (entries) {
+				entries.remove(key, entry);
+			}
+			return load(key, loader);
+		}
+		if (age >= refresh) {
+			// Serve the stale value while revalidating it
+			load(key, loader);
+		}
+		return CompletableFuture.completedFuture(entry.value());
+	}
+
+	/**
+	 * Return the cached value without loading it, whatever its age.
+	 *
+	 * @param key The value key.
+	 * @return The cached value, or <code>null</code> when not cached.
+	 */
+	public V peek(final K key) {
+		synchronized (entries) {
+			final var entry = entries.get(key);
+			return entry == null ? null : entry.value();
+		}
+	}
+
+	/**
+	 * Load the value and store it, or join the in-flight load of the same key. A <code>null</code> loaded value is
+	 * not stored and the previous one is kept. A failed load removes the previous value, so the next request reports
+	 * the failure.
+	 *
+	 * @param key    The value key.
+	 * @param loader The value loader.
+	 * @return The future loaded value.
+	 */
+	public CompletableFuture<V> load(final K key, final Supplier<CompletableFuture<V>> loader) {
+		return loads.execute(key, () -> {
+			final long start;
+			synchronized (entries) {
+				start = generation.incrementAndGet();
+				started.add(start);
+			}
+			try {
+				return loader.get().whenComplete((v, e) -> store(key, start, v, e));
+			} catch (final RuntimeException e) {
+				store(key, start, null, e);
+				throw e;
+			}
+		});
+	}
+
+	/**
+	 * Store the loaded value, unless its key has been invalidated since the start of the load.
+	 */
+	private void store(final K key, final long start, final V value, final Throwable failure) {
+		synchronized (entries) {
+			started.remove(start);
+			if (start > cleared && start > invalidations.getOrDefault(key, 0L)) {
+				if (failure != null) {
+					entries.remove(key);
+				} else if (value != null) {
+					entries.put(key, new Entry<>(value, System.nanoTime()));
+				}
+			}
+
+			// Forget the invalidations no load in flight has started before
+			final var oldest = started.isEmpty() ? Long.MAX_VALUE : started.first();
+			invalidations.values().removeIf(g -> g < oldest);
+		}
+	}
+
+	/**
+	 * Remove the value, such as after an operation changing it. A load in flight is not stored, and the next
+	 * requests start a new load rather than joining it.
+	 *
+	 * @param key The value key.
+	 */
+	public void invalidate(final K key) {
+		synchronized (entries) {
+			invalidations.put(key, generation.incrementAndGet());
+			entries.remove(key);
+			loads.forget(key);
+		}
+	}
+
+	/**
+	 * Remove all values. The loads in flight are not stored, and the next requests start new loads rather than
+	 * joining them.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			cleared = generation.incrementAndGet();
+			invalidations.clear();
+			entries.clear();
+			loads.forgetAll();
+		}
+	}
+
+	/**
+	 * Return the amount of cached values.
+	 *
+	 * @return The amount of cached values.
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+}
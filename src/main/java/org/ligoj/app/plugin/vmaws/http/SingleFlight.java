@@ -0,0 +1,79 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws.http;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesce the concurrent identical calls: while a call is in flight, the other calls with the same key share its
+ * result instead of executing their own.
+ *
+ * @param <K> The call key type.
+ * @param <V> The call result type. Should be immutable since shared by all callers.
+ */
+public class SingleFlight<K, V> {
+
+	private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * Execute the given call, or join the in-flight call having the same key.
+	 *
+	 * @param key  The call key.
+	 * @param call The call to execute when there is no in-flight call for this key. May be executed by the calling
+	 *             thread.
+	 * @return The future result, shared by all callers of the same in-flight call.
+	 */
+	public CompletableFuture<V> execute(final K key, final Supplier<CompletableFuture<V>> call) {
+		final var created = new CompletableFuture<V>();
+		final var existing = inFlight.putIfAbsent(key, created);
+		if (existing != null) {
+			// Join the in-flight call
+			return existing;
+		}
+		try {
+			call.get().whenComplete((r, e) -> {
+				// Release the key before the completion, so the late callers run a new call
+				inFlight.remove(key, created);
+				if (e == null) {
+					created.complete(r);
+				} else {
+					created.completeExceptionally(e);
+				}
+			});
+		} catch (final RuntimeException e) {
+			inFlight.remove(key, created);
+			created.completeExceptionally(e);
+		}
+		return created;
+	}
+
+	/**
+	 * Forget the in-flight call of the given key: its callers still get its result, but the next callers execute a new
+	 * call.
+	 *
+	 * @param key The call key.
+	 */
+	public void forget(final K key) {
+		inFlight.remove(key);
+	}
+
+	/**
+	 * Forget all the in-flight calls.
+	 */
+	public void forgetAll() {
+		inFlight.clear();
+	}
+
+	/**
+	 * Return the amount of in-flight calls.
+	 *
+	 * @return The amount of in-flight calls.
+	 */
+	public int size() {
+		return inFlight.size();
+	}
+}
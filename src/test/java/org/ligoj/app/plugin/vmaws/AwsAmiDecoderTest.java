@@ -0,0 +1,93 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.vm.snapshot.Snapshot;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Test class of {@link AwsAmiDecoder}
+ */
+class AwsAmiDecoderTest {
+
+	private static final String RESPONSE = """
+			<?xml version="1.0" encoding="UTF-8"?>
+			<DescribeImagesResponse xmlns="http://ec2.amazonaws.com/doc/2016-11-15/">
+				<requestId>r-1</requestId>
+				<imagesSet>
+					<item>
+						<imageId>ami-00000001</imageId>
+						<imageState>pending</imageState>
+						<creationDate>2018-01-23T17:46:45.000+01:00</creationDate>
+						<name>first</name>
+						<description> </description>
+						<blockDeviceMapping>
+							<item><deviceName>/dev/sda1</deviceName><ebs><snapshotId>snap-1</snapshotId></ebs></item>
+							<item><deviceName>/dev/sdb</deviceName><virtualName>ephemeral0</virtualName></item>
+						</blockDeviceMapping>
+						<tagSet>
+							<item><key>ligoj:subscription</key><value>1</value></item>
+							<item><key>ligoj:audit</key><value>user1</value></item>
+						</tagSet>
+					</item>
+					<item>
+						<imageId>ami-00000002</imageId>
+						<name>second</name>
+						<blockDeviceMapping>
+							<item><deviceName>/dev/sda1</deviceName><ebs><snapshotId>snap-2</snapshotId><volumeSize>8</volumeSize></ebs></item>
+						</blockDeviceMapping>
+						<tagSet><item><key>ligoj:audit</key><value>user2</value></item></tagSet>
+					</item>
+				</imagesSet>
+			</DescribeImagesResponse>""";
+
+	private List<Snapshot> decode(final String criteria) throws XMLStreamException {
+		return new AwsAmiDecoder(criteria)
+				.decode(new AwsXml().newReader(new ByteArrayInputStream(RESPONSE.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	@Test
+	void decode() throws XMLStreamException {
+		final var amis = decode(null);
+		Assertions.assertEquals(2, amis.size());
+		final var ami = amis.getFirst();
+		Assertions.assertEquals("ami-00000001", ami.getId());
+		Assertions.assertEquals("first", ami.getName());
+		Assertions.assertNull(ami.getDescription());
+		Assertions.assertEquals("pending", ami.getStatusText());
+		Assertions.assertTrue(ami.isPending());
+		Assertions.assertFalse(ami.isAvailable());
+		Assertions.assertEquals("user1", ami.getAuthor().getId());
+		Assertions.assertEquals(1516726005000L, ami.getDate().getTime());
+		Assertions.assertEquals(1, ami.getVolumes().size());
+		Assertions.assertEquals("snap-1", ami.getVolumes().getFirst().getId());
+		Assertions.assertEquals("/dev/sda1", ami.getVolumes().getFirst().getName());
+		Assertions.assertEquals(0, ami.getVolumes().getFirst().getSize());
+
+		// No creation date
+		Assertions.assertEquals(0, amis.get(1).getDate().getTime());
+		Assertions.assertEquals(8, amis.get(1).getVolumes().getFirst().getSize());
+	}
+
+	@Test
+	void decodeCriteria() throws XMLStreamException {
+		final var amis = decode("SNAP-2");
+		Assertions.assertEquals(1, amis.size());
+		Assertions.assertEquals("ami-00000002", amis.getFirst().getId());
+		Assertions.assertEquals("user2", amis.getFirst().getAuthor().getId());
+	}
+
+	@Test
+	void decodeNotDescribeImages() throws XMLStreamException {
+		Assertions.assertTrue(new AwsAmiDecoder("")
+				.decode(new AwsXml().newReader(new ByteArrayInputStream("<Response/>".getBytes(StandardCharsets.UTF_8))))
+				.isEmpty());
+	}
+}
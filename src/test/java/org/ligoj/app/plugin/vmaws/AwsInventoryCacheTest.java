@@ -0,0 +1,199 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.mockito.ArgumentMatchers;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class of {@link AwsInventoryCache}
+ */
+class AwsInventoryCacheTest {
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	private AwsInventoryCache newCache(final int refresh, final int ttl, final int size) {
+		final var cache = new AwsInventoryCache();
+		cache.configuration = mock(ConfigurationResource.class);
+		when(cache.configuration.get(ArgumentMatchers.anyString(), ArgumentMatchers.anyInt()))
+				.thenAnswer(i -> i.getArgument(1));
+		when(cache.configuration.get(AwsInventoryCache.CONF_REFRESH, 60)).thenReturn(refresh);
+		when(cache.configuration.get(AwsInventoryCache.CONF_TTL, 900)).thenReturn(ttl);
+		when(cache.configuration.get(AwsInventoryCache.CONF_SIZE, 100)).thenReturn(size);
+		cache.afterPropertiesSet();
+		return cache;
+	}
+
+	private Supplier<CompletableFuture<List<AwsVm>>> loader(final String id) {
+		return () -> {
+			loads.incrementAndGet();
+			final var vm = new AwsVm();
+			vm.setId(id);
+			vm.setName(id);
+			return CompletableFuture.completedFuture(List.of(vm));
+		};
+	}
+
+	@Test
+	void get() {
+		final var cache = newCache(60, 900, 10);
+		final var pending = new CompletableFuture<List<AwsVm>>();
+		Assertions.assertNull(cache.get("account", () -> pending));
+		loader("i-1").get().thenAccept(pending::complete);
+		Assertions.assertEquals(1, loads.get());
+
+		// Fresh inventory, served without load
+		Assertions.assertEquals("i-1", cache.get("account", loader("i-2")).find("").getFirst().getId());
+		Assertions.assertEquals(1, loads.get());
+	}
+
+	@Test
+	void getStale() {
+		final var cache = newCache(0, 900, 10);
+		cache.load("account", loader("i-1")).join();
+
+		// Stale inventory is served while revalidated
+		final var pending = new CompletableFuture<List<AwsVm>>();
+		final var index = cache.get("account", () -> pending);
+		Assertions.assertEquals("i-1", index.find("").getFirst().getId());
+		loader("i-2").get().thenAccept(pending::complete);
+
+		// The index is updated in place
+		Assertions.assertEquals("i-2", index.find("").getFirst().getId());
+		Assertions.assertSame(index, cache.get("account", loader("i-3")));
+	}
+
+	@Test
+	void getExpired() {
+		final var cache = newCache(0, 0, 10);
+		cache.load("account", loader("i-1")).join();
+
+		// Expired inventory is not served, the inventory loaded by the calling thread is
+		Assertions.assertEquals("i-2", cache.get("account", loader("i-2")).find("").getFirst().getId());
+		Assertions.assertNull(cache.get("account", () -> new CompletableFuture<>()));
+		Assertions.assertEquals(2, loads.get());
+	}
+
+	@Test
+	void refreshAll() {
+		final var cache = newCache(60, 900, 10);
+		cache.get("account1", loader("i-1"));
+		cache.load("account2", loader("i-2")).join();
+		Assertions.assertEquals(2, loads.get());
+
+		// The requested inventory is reloaded without being requested again
+		cache.refreshAll();
+		Assertions.assertEquals(3, loads.get());
+		cache.destroy();
+	}
+
+	@Test
+	void refreshAllNotRequested() {
+		final var cache = newCache(60, 0, 10);
+		cache.get("account", loader("i-1"));
+		Assertions.assertEquals(1, loads.get());
+
+		// The inventory not requested within the time to live is forgotten
+		cache.refreshAll();
+		cache.refreshAll();
+		Assertions.assertEquals(1, loads.get());
+		cache.destroy();
+	}
+
+	@Test
+	void refreshAllNotCached() {
+		final var cache = newCache(60, 900, 10);
+		cache.get("account", loader("i-1"));
+		cache.invalidate("account");
+
+		// The invalidated inventory is loaded by its next request only
+		cache.refreshAll();
+		Assertions.assertEquals(1, loads.get());
+		cache.clear();
+		cache.refreshAll();
+		Assertions.assertEquals(1, loads.get());
+		cache.destroy();
+	}
+
+	@Test
+	void loadFailed() {
+		final var cache = newCache(60, 900, 10);
+		cache.load("account", loader("i-1")).join();
+		Assertions.assertNull(cache.load("account", () -> CompletableFuture.completedFuture(null)).join());
+
+		// Previous inventory is kept
+		Assertions.assertEquals("i-1", cache.get("account", loader("i-2")).find("").getFirst().getId());
+	}
+
+	@Test
+	void size() {
+		final var cache = newCache(60, 900, 2);
+		cache.load("account1", loader("i-1")).join();
+		cache.load("account2", loader("i-2")).join();
+		cache.get("account1", loader("i-1"));
+		cache.load("account3", loader("i-3")).join();
+
+		// The least recently used inventory is evicted
+		Assertions.assertEquals(2, cache.size());
+		Assertions.assertNotNull(cache.get("account1", loader("i-1")));
+		Assertions.assertNull(cache.get("account2", () -> new CompletableFuture<>()));
+	}
+
+	@Test
+	void invalidate() {
+		final var cache = newCache(60, 900, 10);
+		final var pending = new CompletableFuture<List<AwsVm>>();
+		final var load = cache.load("account", () -> pending);
+		cache.invalidate("account");
+
+		// A load started before the invalidation is not stored
+		pending.complete(List.of());
+		Assertions.assertEquals(0, load.join().find("").size());
+		Assertions.assertEquals(0, cache.size());
+
+		cache.load("account", loader("i-1")).join();
+		cache.clear();
+		Assertions.assertEquals(0, cache.size());
+	}
+
+	@Test
+	void invalidateOther() {
+		final var cache = newCache(60, 900, 10);
+		final var pending = new CompletableFuture<List<AwsVm>>();
+		final var load = cache.load("account1", () -> pending);
+		cache.invalidate("account2");
+
+		// The invalidation of another inventory does not drop this load
+		loader("i-1").get().thenAccept(pending::complete);
+		Assertions.assertEquals(1, load.join().find("").size());
+		Assertions.assertEquals("i-1", cache.get("account1", loader("i-2")).find("").getFirst().getId());
+
+		// A load started after the invalidation is stored
+		cache.load("account2", loader("i-3")).join();
+		Assertions.assertEquals(2, cache.size());
+	}
+
+	@Test
+	void clearInFlight() {
+		final var cache = newCache(60, 900, 10);
+		final var pending = new CompletableFuture<List<AwsVm>>();
+		final var load = cache.load("account", () -> pending);
+		cache.clear();
+
+		// A load started before the clear is not stored
+		loader("i-1").get().thenAccept(pending::complete);
+		Assertions.assertEquals(1, load.join().find("").size());
+		Assertions.assertEquals(0, cache.size());
+	}
+}
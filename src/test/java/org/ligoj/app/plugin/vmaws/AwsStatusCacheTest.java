@@ -0,0 +1,147 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class of {@link AwsStatusCache}
+ */
+class AwsStatusCacheTest {
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	private AwsStatusCache newCache(final int ttl) {
+		return newCache(ttl, 600, 10000);
+	}
+
+	private AwsStatusCache newCache(final int ttl, final int maxAge, final int size) {
+		final var cache = new AwsStatusCache();
+		cache.configuration = mock(ConfigurationResource.class);
+		when(cache.configuration.get(AwsStatusCache.CONF_TTL, 60)).thenReturn(ttl);
+		when(cache.configuration.get(AwsStatusCache.CONF_MAX_AGE, 600)).thenReturn(maxAge);
+		when(cache.configuration.get(AwsStatusCache.CONF_SIZE, 10000)).thenReturn(size);
+		cache.afterPropertiesSet();
+		return cache;
+	}
+
+	private Supplier<CompletableFuture<AwsVm>> loader(final String id) {
+		return () -> {
+			loads.incrementAndGet();
+			final var vm = new AwsVm();
+			vm.setId(id);
+			return CompletableFuture.completedFuture(vm);
+		};
+	}
+
+	@Test
+	void get() {
+		final var cache = newCache(60);
+		Assertions.assertEquals("i-1", cache.get(1, loader("i-1")).join().getId());
+		Assertions.assertEquals(1, loads.get());
+
+		// Fresh VM, served without load
+		Assertions.assertEquals("i-1", cache.get(1, loader("i-2")).join().getId());
+		Assertions.assertEquals(1, loads.get());
+		Assertions.assertEquals("i-3", cache.get(2, loader("i-3")).join().getId());
+		Assertions.assertEquals(2, cache.size());
+	}
+
+	@Test
+	void getStale() {
+		final var cache = newCache(0);
+		cache.load(1, loader("i-1")).join();
+
+		// Without time to live, the VM is always loaded
+		Assertions.assertEquals("i-2", cache.get(1, loader("i-2")).join().getId());
+	}
+
+	@Test
+	void getRevalidate() throws InterruptedException {
+		final var cache = newCache(1);
+		cache.load(1, loader("i-1")).join();
+		Thread.sleep(1100);
+
+		// Stale VM is served while revalidated
+		final var pending = new CompletableFuture<AwsVm>();
+		Assertions.assertEquals("i-1", cache.get(1, () -> pending).join().getId());
+		loader("i-2").get().thenAccept(pending::complete);
+		Assertions.assertEquals("i-2", cache.get(1, loader("i-3")).join().getId());
+	}
+
+	@Test
+	void getExpired() throws InterruptedException {
+		final var cache = newCache(1, 1, 10000);
+		cache.load(1, loader("i-1")).join();
+		Thread.sleep(1100);
+
+		// Expired VM is no more served
+		Assertions.assertEquals("i-2", cache.get(1, loader("i-2")).join().getId());
+	}
+
+	@Test
+	void size() {
+		final var cache = newCache(60, 600, 2);
+		cache.load(1, loader("i-1")).join();
+		cache.load(2, loader("i-2")).join();
+		cache.load(3, loader("i-3")).join();
+		Assertions.assertEquals(2, cache.size());
+	}
+
+	@Test
+	void loadFailed() {
+		final var cache = newCache(60);
+		cache.load(1, loader("i-1")).join();
+		final var failed = cache.load(1, () -> CompletableFuture.failedFuture(new IllegalStateException("failed")));
+		Assertions.assertEquals("failed",
+				Assertions.assertThrows(CompletionException.class, failed::join).getCause().getMessage());
+
+		// The VM failed to be reloaded is no more served
+		Assertions.assertEquals(0, cache.size());
+		Assertions.assertEquals("i-2", cache.get(1, loader("i-2")).join().getId());
+	}
+
+	@Test
+	void invalidate() {
+		final var cache = newCache(60);
+		final var pending = new CompletableFuture<AwsVm>();
+		final var load = cache.load(1, () -> pending);
+		cache.invalidate(1);
+
+		// A load started before the invalidation is not stored
+		pending.complete(new AwsVm());
+		Assertions.assertNotNull(load.join());
+		Assertions.assertEquals(0, cache.size());
+
+		cache.load(1, loader("i-1")).join();
+		cache.clear();
+		Assertions.assertEquals(0, cache.size());
+	}
+
+	@Test
+	void invalidateInFlight() {
+		final var cache = newCache(60);
+		final var pending = new CompletableFuture<AwsVm>();
+		cache.get(1, () -> pending);
+		cache.invalidate(1);
+
+		// The next request does not join the load of the VM before the operation
+		Assertions.assertEquals("i-2", cache.get(1, loader("i-2")).join().getId());
+		final var before = new AwsVm();
+		before.setId("i-1");
+		pending.complete(before);
+		Assertions.assertEquals("i-2", cache.get(1, loader("i-3")).join().getId());
+		Assertions.assertEquals(1, loads.get());
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.vm.model.VmStatus;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test class of {@link AwsVmDecoder}
+ */
+class AwsVmDecoderTest {
+
+	private List<AwsVm> decode(final String xml, final boolean details) throws XMLStreamException {
+		final var type = new InstanceType();
+		type.setId("t2.micro");
+		type.setCpu(1);
+		type.setRam(1d);
+		return new AwsVmDecoder(Map.of(type.getId(), type), details)
+				.decode(new AwsXml().newReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	@Test
+	void decodeNotDescribeInstances() throws XMLStreamException {
+		Assertions.assertTrue(decode("<?xml version=\"1.0\"?><Response><reservationSet/></Response>", true).isEmpty());
+	}
+
+	@Test
+	void decodeNamespace() throws XMLStreamException {
+		final var vms = decode("""
+				<?xml version="1.0" encoding="UTF-8"?>
+				<DescribeInstancesResponse xmlns="http://ec2.amazonaws.com/doc/2016-11-15/">
+					<requestId>r-1</requestId>
+					<reservationSet>
+						<item>
+							<reservationId>r-0</reservationId>
+							<groupSet><item><groupId>sg-1</groupId></item></groupSet>
+							<instancesSet>
+								<item>
+									<instanceId>i-1</instanceId>
+									<instanceType>t2.micro</instanceType>
+									<instanceState><code>64</code><name>stopping</name></instanceState>
+									<blockDeviceMapping><item><deviceName>/dev/xvda</deviceName></item></blockDeviceMapping>
+									<tagSet>
+										<item><key>NAME</key><value> vm-1 </value></item>
+										<item><key>name</key><value>ignored</value></item>
+									</tagSet>
+									<ipAddress>1.2.3.4</ipAddress>
+								</item>
+							</instancesSet>
+						</item>
+						<item>
+							<instancesSet>
+								<item>
+									<instanceId>i-2</instanceId>
+									<instanceType>unknown</instanceType>
+									<instanceState><code>16</code></instanceState>
+								</item>
+							</instancesSet>
+						</item>
+					</reservationSet>
+				</DescribeInstancesResponse>""", false);
+		Assertions.assertEquals(2, vms.size());
+		final var vm = vms.getFirst();
+		Assertions.assertEquals("i-1", vm.getId());
+		Assertions.assertEquals("vm-1", vm.getName());
+		Assertions.assertNull(vm.getDescription());
+		Assertions.assertEquals(VmStatus.POWERED_OFF, vm.getStatus());
+		Assertions.assertTrue(vm.isBusy());
+		Assertions.assertFalse(vm.isDeployed());
+		Assertions.assertEquals(1024, vm.getRam());
+		Assertions.assertEquals(1, vm.getCpu());
+		Assertions.assertNull(vm.getNetworks());
+		Assertions.assertNull(vm.getTags());
+
+		final var vm2 = vms.get(1);
+		Assertions.assertEquals("i-2", vm2.getName());
+		Assertions.assertEquals(VmStatus.POWERED_ON, vm2.getStatus());
+		Assertions.assertTrue(vm2.isDeployed());
+		Assertions.assertEquals(0, vm2.getRam());
+	}
+
+	@Test
+	void decodeNetworks() throws XMLStreamException {
+		final var vms = decode("""
+				<DescribeInstancesResponse><reservationSet><item><instancesSet><item>
+					<instanceId>i-1</instanceId>
+					<instanceState><code>16</code></instanceState>
+					<tagSet>
+						<item><key>Name</key><value>vm-1</value></item>
+						<item><key>Env</key><value/></item>
+						<item><key>env</key><value>ignored</value></item>
+					</tagSet>
+					<dnsName>public.dns</dnsName>
+					<ipAddress/>
+					<networkInterfaceSet>
+						<item>
+							<privateIpAddress>10.0.0.2</privateIpAddress>
+							<ipv6AddressesSet><item><ipv6Address>::1</ipv6Address></item><item><ipv6Address>::2</ipv6Address></item></ipv6AddressesSet>
+						</item>
+						<item><ipv6AddressesSet><item><ipv6Address>::3</ipv6Address></item></ipv6AddressesSet></item>
+					</networkInterfaceSet>
+				</item></instancesSet></item></reservationSet></DescribeInstancesResponse>""", true);
+		final var tags = vms.getFirst().getTags();
+		Assertions.assertEquals(2, tags.size());
+		Assertions.assertEquals("vm-1", tags.get("NAME"));
+		Assertions.assertTrue(tags.containsKey("ENV"));
+		Assertions.assertNull(tags.get("env"));
+
+		final var networks = vms.getFirst().getNetworks();
+		Assertions.assertEquals(2, networks.size());
+		Assertions.assertEquals("::1", networks.getFirst().getIp());
+		Assertions.assertEquals("public", networks.getFirst().getType());
+		Assertions.assertNull(networks.getFirst().getDns());
+		Assertions.assertEquals("::3", networks.get(1).getIp());
+	}
+
+	@Test
+	void decodeStates() throws XMLStreamException {
+		final var states = AwsVmDecoder.decodeStates(new AwsXml().newReader(new ByteArrayInputStream("""
+				<?xml version="1.0" encoding="UTF-8"?>
+				<DescribeInstanceStatusResponse xmlns="http://ec2.amazonaws.com/doc/2016-11-15/">
+					<requestId>r-1</requestId>
+					<instanceStatusSet>
+						<item>
+							<instanceId>i-1</instanceId>
+							<availabilityZone>eu-west-1a</availabilityZone>
+							<instanceState><code>16</code><name>running</name></instanceState>
+							<systemStatus><status>ok</status><details><item><name>reachability</name></item></details></systemStatus>
+						</item>
+						<item>
+							<instanceId>i-2</instanceId>
+							<instanceState><code>64</code><name>stopping</name></instanceState>
+						</item>
+						<item>
+							<instanceId>i-3</instanceId>
+							<instanceState><code>99</code></instanceState>
+						</item>
+					</instanceStatusSet>
+				</DescribeInstanceStatusResponse>""".getBytes(StandardCharsets.UTF_8))));
+		Assertions.assertEquals(3, states.size());
+		Assertions.assertEquals("i-1", states.getFirst().getId());
+		Assertions.assertEquals(VmStatus.POWERED_ON, states.getFirst().getStatus());
+		Assertions.assertFalse(states.getFirst().isBusy());
+		Assertions.assertEquals(VmStatus.POWERED_OFF, states.get(1).getStatus());
+		Assertions.assertTrue(states.get(1).isBusy());
+		Assertions.assertNull(states.get(2).getStatus());
+		Assertions.assertFalse(states.get(2).isBusy());
+	}
+
+	@Test
+	void decodeStatesNotDescribeInstanceStatus() throws XMLStreamException {
+		Assertions.assertTrue(AwsVmDecoder.decodeStates(new AwsXml().newReader(new ByteArrayInputStream(
+				"<Response><instanceStatusSet/></Response>".getBytes(StandardCharsets.UTF_8)))).isEmpty());
+	}
+
+	@Test
+	void decodePage() throws XMLStreamException {
+		final var page = new AwsVmDecoder(Map.of(), false).decodePage(new AwsXml().newReader(new ByteArrayInputStream("""
+				<DescribeInstancesResponse xmlns="http://ec2.amazonaws.com/doc/2016-11-15/">
+					<reservationSet>
+						<item><instancesSet><item><instanceId>i-1</instanceId></item></instancesSet></item>
+						<item><instancesSet><item><instanceId>i-2</instanceId></item></instancesSet></item>
+					</reservationSet>
+					<nextToken> 2&amp;+= </nextToken>
+				</DescribeInstancesResponse>""".getBytes(StandardCharsets.UTF_8))), vm -> vm.getId().equals("i-2"));
+		Assertions.assertEquals(List.of("i-2"), page.vms().stream().map(AwsVm::getId).toList());
+		Assertions.assertEquals("2&+=", page.nextToken());
+	}
+
+	@Test
+	void decodePageLast() throws XMLStreamException {
+		Assertions.assertNull(new AwsVmDecoder(Map.of(), false).decodePage(new AwsXml().newReader(new ByteArrayInputStream(
+				"<DescribeInstancesResponse><nextToken/></DescribeInstancesResponse>".getBytes(StandardCharsets.UTF_8))),
+				vm -> true).nextToken());
+	}
+
+	@Test
+	void decodeInvalid() {
+		Assertions.assertThrows(XMLStreamException.class, () -> decode("<DescribeInstancesResponse>", false));
+	}
+
+	@Test
+	void decodeDoctype() {
+		Assertions.assertThrows(XMLStreamException.class, () -> decode(
+				"<!DOCTYPE x [<!ENTITY e SYSTEM \"file:///etc/passwd\">]><DescribeInstancesResponse>&e;</DescribeInstancesResponse>",
+				false));
+	}
+}
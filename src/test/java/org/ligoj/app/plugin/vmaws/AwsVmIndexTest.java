@@ -0,0 +1,66 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.vm.model.VmStatus;
+
+import java.util.List;
+
+/**
+ * Test class of {@link AwsVmIndex}
+ */
+class AwsVmIndexTest {
+
+	private AwsVm newVm(final String id, final String name) {
+		final var vm = new AwsVm();
+		vm.setId(id);
+		vm.setName(name);
+		return vm;
+	}
+
+	private List<String> find(final AwsVmIndex index, final String criteria) {
+		return index.find(criteria).stream().map(AwsVm::getId).toList();
+	}
+
+	@Test
+	void find() {
+		final var index = new AwsVmIndex(List.of(newVm("i-00000003", "web-server"), newVm("i-00000001", "Web-Proxy"),
+				newVm("i-00000002", "DATABASE"), newVm("i-00000004", "web-server")));
+		Assertions.assertEquals(4, index.size());
+
+		// Ordered by name, then by identifier
+		Assertions.assertEquals(List.of("i-00000002", "i-00000001", "i-00000003", "i-00000004"), find(index, ""));
+		Assertions.assertEquals(List.of("i-00000001", "i-00000003", "i-00000004"), find(index, "WEB-"));
+		Assertions.assertEquals(List.of("i-00000003", "i-00000004"), find(index, "server"));
+		Assertions.assertEquals(List.of("i-00000002"), find(index, "tabas"));
+		Assertions.assertEquals(List.of("i-00000004"), find(index, "I-00000004"));
+
+		// Shorter than a trigram
+		Assertions.assertEquals(List.of("i-00000001", "i-00000003", "i-00000004"), find(index, "r"));
+
+		// All trigrams are indexed, but not contiguous
+		Assertions.assertEquals(List.of(), find(index, "web-serverweb"));
+		Assertions.assertEquals(List.of(), find(index, "unknown"));
+	}
+
+	@Test
+	void update() {
+		final var index = new AwsVmIndex(List.of(newVm("i-00000001", "web-proxy"), newVm("i-00000002", "database")));
+
+		// Renamed, removed, added and updated instances
+		final var proxy = newVm("i-00000001", "web-proxy");
+		proxy.setStatus(VmStatus.POWERED_ON);
+		index.update(List.of(proxy, newVm("i-00000003", "web-server"), newVm("i-00000004", "backup-db")));
+		Assertions.assertEquals(3, index.size());
+		Assertions.assertEquals(List.of("i-00000004", "i-00000001", "i-00000003"), find(index, ""));
+		Assertions.assertEquals(List.of(), find(index, "database"));
+		Assertions.assertSame(proxy, index.find("proxy").getFirst());
+
+		index.update(List.of(newVm("i-00000001", "db-proxy")));
+		Assertions.assertEquals(List.of("i-00000001"), find(index, "db-"));
+		Assertions.assertEquals(List.of(), find(index, "web"));
+	}
+}
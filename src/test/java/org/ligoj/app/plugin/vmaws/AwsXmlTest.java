@@ -0,0 +1,54 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.bootstrap.core.resource.TechnicalException;
+import org.xml.sax.SAXException;
+
+import javax.xml.xpath.XPathExpression;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Test class of {@link AwsXml}
+ */
+class AwsXmlTest {
+
+	private final AwsXml xml = new AwsXml();
+
+	@Test
+	void getExpression() {
+		final var expression = xml.getExpression("/*/return");
+		Assertions.assertSame(expression, xml.getExpression("/*/return"));
+
+		// Compiled expressions are confined to their thread
+		final XPathExpression other = CompletableFuture.supplyAsync(() -> xml.getExpression("/*/return")).join();
+		Assertions.assertNotSame(expression, other);
+	}
+
+	@Test
+	void getExpressionInvalid() {
+		Assertions.assertThrows(TechnicalException.class, () -> xml.getExpression("/*/["));
+	}
+
+	@Test
+	void getText() throws SAXException, IOException {
+		final var document = xml.parse("""
+				<CreateTagsResponse xmlns="http://ec2.amazonaws.com/doc/2016-11-15/">
+					<requestId>0</requestId>
+					<return> true </return>
+				</CreateTagsResponse>""");
+		Assertions.assertEquals("true", xml.getText(document, "/*/return"));
+		Assertions.assertNull(xml.getText(document, "/*/imageId"));
+	}
+
+	@Test
+	void getNodes() throws SAXException, IOException {
+		final var items = xml.getNodes(xml.parse("<a><item><id>1</id></item><item><id>2</id></item></a>"), "/a/item");
+		Assertions.assertEquals(2, items.getLength());
+		Assertions.assertEquals("2", xml.getText(items.item(1), "id"));
+	}
+}
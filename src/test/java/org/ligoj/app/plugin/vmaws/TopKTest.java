@@ -0,0 +1,57 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Test class of {@link TopK}
+ */
+class TopKTest {
+
+	private static final List<Integer> ITEMS = List.of(5, 3, 9, 1, 7, 2, 8);
+
+	@Test
+	void select() {
+		Assertions.assertEquals(List.of(1, 2, 3), TopK.select(ITEMS, Comparator.naturalOrder(), 0, 3));
+		Assertions.assertEquals(List.of(3, 5), TopK.select(ITEMS, Comparator.naturalOrder(), 2, 2));
+		Assertions.assertEquals(List.of(9, 8), TopK.select(ITEMS, Comparator.reverseOrder(), 0, 2));
+	}
+
+	@Test
+	void selectAll() {
+		Assertions.assertEquals(List.of(1, 2, 3, 5, 7, 8, 9),
+				TopK.select(ITEMS, Comparator.naturalOrder(), 0, Integer.MAX_VALUE));
+		Assertions.assertEquals(List.of(8, 9), TopK.select(ITEMS, Comparator.naturalOrder(), 5, Integer.MAX_VALUE));
+	}
+
+	@Test
+	void selectSameName() {
+		final var vms = List.of(newVm("i-3", "vm"), newVm("i-1", "vm"), newVm("i-2", "other"), newVm("i-0", "vm"));
+
+		// Same order as the index: the identifier breaks the ties
+		Assertions.assertEquals(List.of("i-1", "i-3"),
+				TopK.select(vms, AwsVmIndex.ORDER, 2, 2).stream().map(AwsVm::getId).toList());
+		Assertions.assertEquals(List.of("i-1", "i-3"),
+				new AwsVmIndex(vms).find("", 2, 2).stream().map(AwsVm::getId).toList());
+	}
+
+	private AwsVm newVm(final String id, final String name) {
+		final var vm = new AwsVm();
+		vm.setId(id);
+		vm.setName(name);
+		return vm;
+	}
+
+	@Test
+	void selectOutOfRange() {
+		Assertions.assertEquals(List.of(), TopK.select(ITEMS, Comparator.naturalOrder(), 10, 2));
+		Assertions.assertEquals(List.of(), TopK.select(ITEMS, Comparator.naturalOrder(), 0, 0));
+		Assertions.assertEquals(List.of(), TopK.select(List.<Integer>of(), Comparator.naturalOrder(), 0, 2));
+	}
+}
@@ -3,6 +3,8 @@
  */
 package org.ligoj.app.plugin.vmaws;
 
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import jakarta.persistence.EntityNotFoundException;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.core.UriInfo;
 import org.apache.commons.io.IOUtils;
@@ -17,6 +19,7 @@ import org.ligoj.app.dao.SubscriptionRepository;
 import org.ligoj.app.model.*;
 import org.ligoj.app.plugin.vmaws.auth.AWS4SignatureQuery;
 import org.ligoj.app.plugin.vmaws.auth.AWS4SignatureQuery.AWS4SignatureQueryBuilder;
+import org.ligoj.app.plugin.vmaws.http.ResponseParser;
 import org.ligoj.app.plugin.vm.execution.Vm;
 import org.ligoj.app.plugin.vm.model.*;
 import org.ligoj.app.resource.node.ParameterValueResource;
@@ -34,11 +37,19 @@ import org.springframework.test.annotation.Rollback;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.mockito.Mockito.*;
@@ -53,6 +64,14 @@ import static org.mockito.Mockito.verify;
 @Transactional
 class VmAwsPluginResourceTest extends AbstractServerTest {
 
+	private static final String QUERY_ALL = "Action=DescribeInstances&MaxResults=1000&Version=2016-11-15";
+
+	/**
+	 * Any DescribeInstances query, whatever the pushed filters.
+	 */
+	private static final Predicate<String> QUERY_DESCRIBE = body -> body != null
+			&& body.startsWith("Action=DescribeInstances&");
+
 	private static final String MOCK_URL = "http://localhost:" + MOCK_PORT + "/mock";
 
 	private static int counterQuery = 0;
@@ -76,6 +95,12 @@ class VmAwsPluginResourceTest extends AbstractServerTest {
 	@Autowired
 	private ConfigurationResource configuration;
 
+	@Autowired
+	private AwsInventoryCache inventoryCache;
+
+	@Autowired
+	private AwsStatusCache statusCache;
+
 	@BeforeEach
 	void prepareData() throws Exception {
 		// Only with Spring context
@@ -96,7 +121,21 @@ class VmAwsPluginResourceTest extends AbstractServerTest {
 		};
 		applicationContext.getAutowireCapableBeanFactory().autowireBean(resource);
 		configuration.delete("service:vm:aws:region");
+		configuration.delete(VmAwsPluginResource.CONF_PAGE_SIZE);
+		configuration.delete(VmAwsPluginResource.CONF_SEARCH_REGIONS);
+		configuration.delete(VmAwsPluginResource.CONF_SEARCH_DEADLINE);
+		configuration.delete(VmAwsPluginResource.CONF_BATCH_WINDOW);
+		configuration.delete(AwsStatusCache.CONF_TTL);
+		configuration.delete(VmAwsPluginResource.CONF_STATUS_DEADLINE);
+		configuration.delete(VmAwsPluginResource.CONF_STATUS_PARALLELISM);
 		resource.afterPropertiesSet();
+		resource.circuitBreaker.reset();
+		inventoryCache.clear();
+		statusCache.clear();
+
+		// Inventory is only enabled by the dedicated tests
+		resource.inventoryCache = mock(AwsInventoryCache.class);
+		when(resource.inventoryCache.get(any(), any())).thenReturn(null);
 
 		// Coverage only
 		Assertions.assertEquals("service:vm:aws", resource.getKey());
@@ -136,8 +175,246 @@ class VmAwsPluginResourceTest extends AbstractServerTest {
 	}
 
 	@Test
-	void addNetworkDetailsNullNode() throws IOException {
-		mockAwsVm().addNetworkDetails(null, Collections.emptyList());
+	void getVmDetailsAsync() throws Exception {
+		checkVmDetails(mockAwsVm().getVmDetailsAsync(List.of(subscription, subscription)).get(subscription).join());
+	}
+
+	@Test
+	void getVmDetailsAsyncNotFound() {
+		final var resource = mockEc2("eu-west-1",
+				"Action=DescribeInstances&Filter.1.Name=instance-id&Filter.1.Value.1=i-12345678&Version=2016-11-15",
+				HttpStatus.SC_OK, "<DescribeInstancesResponse><reservationSet/></DescribeInstancesResponse>");
+		final var result = resource.getVmDetailsAsync(List.of(subscription));
+		Assertions.assertEquals(1, result.size());
+		MatcherUtil.assertThrows((ValidationJsonException) Assertions
+				.assertThrows(CompletionException.class, () -> result.get(subscription).join()).getCause(),
+				VmAwsPluginResource.PARAMETER_INSTANCE_ID, "aws-instance-id");
+	}
+
+	@Test
+	void getVmDetailsAsyncGroup() throws IOException {
+		final var resource = mockEc2("eu-west-1",
+				"Action=DescribeInstances&Filter.1.Name=instance-id&Filter.1.Value.1=i-12345678&Filter.1.Value.2=i-00000001&Filter.1.Value.3=i-99999999&Version=2016-11-15",
+				HttpStatus.SC_OK, IOUtils.toString(
+						new ClassPathResource("mock-server/aws/describe.xml").getInputStream(), StandardCharsets.UTF_8));
+		final var vms = resource.getVmDetailsAsync(pvResource.getSubscriptionParameters(subscription),
+				List.of("i-12345678", "i-00000001", "i-99999999", "i-12345678")).join();
+
+		// Only the requested and found instances
+		Assertions.assertEquals(2, vms.size());
+		Assertions.assertEquals("i-12345678", vms.get("i-12345678").getId());
+		Assertions.assertEquals("i-00000001", vms.get("i-00000001").getId());
+		Assertions.assertFalse(vms.containsKey("i-99999999"));
+	}
+
+	@Test
+	void getVmDetailsAsyncChunks() {
+		final var resource = spy(this.resource);
+		doReturn(CompletableFuture.completedFuture(null)).when(resource).processEC2Async(anyMap(), anyString(),
+				any(ResponseParser.class));
+		final var ids = IntStream.range(0, 201).mapToObj(i -> String.format("i-%08d", i)).toList();
+		Assertions.assertTrue(resource.getVmDetailsAsync(pvResource.getSubscriptionParameters(subscription), ids)
+				.join().isEmpty());
+		verify(resource, times(2)).processEC2Async(anyMap(), anyString(), any(ResponseParser.class));
+		verify(resource).processEC2Async(anyMap(),
+				ArgumentMatchers.endsWith("&Filter.1.Value.200=i-00000199"), any(ResponseParser.class));
+		verify(resource).processEC2Async(anyMap(),
+				ArgumentMatchers.eq("Action=DescribeInstances&Filter.1.Name=instance-id&Filter.1.Value.1=i-00000200"),
+				any(ResponseParser.class));
+	}
+
+	@Test
+	void getVmState() throws Exception {
+		final var state = mockEc2("eu-west-1",
+				"Action=DescribeInstanceStatus&IncludeAllInstances=true&InstanceId.1=i-12345678&Version=2016-11-15",
+				HttpStatus.SC_OK,
+				IOUtils.toString(new ClassPathResource("mock-server/aws/describe-instance-status.xml").getInputStream(),
+						StandardCharsets.UTF_8)).getVmState(subscription);
+		Assertions.assertEquals("i-12345678", state.getId());
+		Assertions.assertEquals(VmStatus.POWERED_ON, state.getStatus());
+		Assertions.assertFalse(state.isBusy());
+	}
+
+	@Test
+	void getVmStateNotFound() {
+		final var resource = mockEc2("eu-west-1",
+				"Action=DescribeInstanceStatus&IncludeAllInstances=true&InstanceId.1=i-12345678&Version=2016-11-15",
+				HttpStatus.SC_BAD_REQUEST, "<Response><Errors><Error><Code>InvalidInstanceID.NotFound</Code></Error></Errors></Response>");
+		MatcherUtil.assertThrows(Assertions.assertThrows(ValidationJsonException.class,
+				() -> resource.getVmState(subscription)), VmAwsPluginResource.PARAMETER_INSTANCE_ID, "aws-instance-id");
+	}
+
+	@Test
+	void getVmStatesAsync() throws IOException {
+		final var resource = mockEc2("eu-west-1",
+				"Action=DescribeInstanceStatus&IncludeAllInstances=true&InstanceId.1=i-12345678&Version=2016-11-15",
+				HttpStatus.SC_OK,
+				IOUtils.toString(new ClassPathResource("mock-server/aws/describe-instance-status.xml").getInputStream(),
+						StandardCharsets.UTF_8));
+		final var states = resource.getVmStatesAsync(List.of(subscription));
+		Assertions.assertEquals(1, states.size());
+		Assertions.assertEquals(VmStatus.POWERED_ON, states.get(subscription).join().getStatus());
+	}
+
+	@Test
+	void getVmStatesAsyncNotFound() throws IOException {
+		// An unknown instance fails the whole request, the other instances are described again
+		final var resource = mockEc2("eu-west-1",
+				"Action=DescribeInstanceStatus&IncludeAllInstances=true&InstanceId.1=i-12345678&InstanceId.2=i-00000002&InstanceId.3=i-99999999&Version=2016-11-15",
+				HttpStatus.SC_BAD_REQUEST, "<Response><Errors><Error><Code>InvalidInstanceID.NotFound</Code>"
+						+ "<Message>The instance ID 'i-99999999' does not exist</Message></Error></Errors></Response>");
+		addQueryMock(resource, "ec2", "eu-west-1",
+				"Action=DescribeInstanceStatus&IncludeAllInstances=true&InstanceId.1=i-12345678&InstanceId.2=i-00000002&Version=2016-11-15",
+				HttpStatus.SC_OK,
+				IOUtils.toString(new ClassPathResource("mock-server/aws/describe-instance-status.xml").getInputStream(),
+						StandardCharsets.UTF_8));
+		final var states = resource.getVmStatesAsync(pvResource.getSubscriptionParameters(subscription),
+				List.of("i-12345678", "i-00000002", "i-99999999")).join();
+
+		// Only the requested and found instances
+		Assertions.assertEquals(2, states.size());
+		Assertions.assertFalse(states.get("i-12345678").isBusy());
+		Assertions.assertTrue(states.get("i-00000002").isBusy());
+		Assertions.assertFalse(states.containsKey("i-99999999"));
+		httpServer.verify(2, postRequestedFor(urlMatching("/mock/.*")));
+	}
+
+	@Test
+	void getVmStatesAsyncNotFoundUnnamed() {
+		// The unknown instance cannot be identified, the request is not retried
+		final var resource = mockEc2("eu-west-1",
+				"Action=DescribeInstanceStatus&IncludeAllInstances=true&InstanceId.1=i-12345678&InstanceId.2=i-00000002&Version=2016-11-15",
+				HttpStatus.SC_BAD_REQUEST,
+				"<Response><Errors><Error><Code>InvalidInstanceID.Malformed</Code></Error></Errors></Response>");
+		final var states = resource.getVmStatesAsync(pvResource.getSubscriptionParameters(subscription),
+				List.of("i-12345678", "i-00000002"));
+		Assertions.assertEquals("DescribeInstanceStatus-failed",
+				Assertions.assertThrows(CompletionException.class, states::join).getCause().getMessage());
+		httpServer.verify(1, postRequestedFor(urlMatching("/mock/.*")));
+	}
+
+	@Test
+	void getVmStatesAsyncFailed() {
+		// Other failures are not reported as unknown instances
+		final var resource = mockEc2("eu-west-1",
+				"Action=DescribeInstanceStatus&IncludeAllInstances=true&InstanceId.1=i-12345678&InstanceId.2=i-00000002&Version=2016-11-15",
+				HttpStatus.SC_FORBIDDEN,
+				"<Response><Errors><Error><Code>UnauthorizedOperation</Code></Error></Errors></Response>");
+		final var states = resource.getVmStatesAsync(pvResource.getSubscriptionParameters(subscription),
+				List.of("i-12345678", "i-00000002"));
+		Assertions.assertEquals("DescribeInstanceStatus-failed",
+				Assertions.assertThrows(CompletionException.class, states::join).getCause().getMessage());
+		httpServer.verify(1, postRequestedFor(urlMatching("/mock/.*")));
+	}
+
+	private String getVmStates(final VmAwsPluginResource resource, final String node) throws IOException {
+		final var output = new ByteArrayOutputStream();
+		resource.getVmStates(subscriptionRepository.findOneExpected(subscription).getProject().getId(), node)
+				.write(output);
+		return output.toString(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void getVmStates() throws IOException {
+		final var resource = mockEc2("eu-west-1",
+				"Action=DescribeInstanceStatus&IncludeAllInstances=true&InstanceId.1=i-12345678&Version=2016-11-15",
+				HttpStatus.SC_OK,
+				IOUtils.toString(new ClassPathResource("mock-server/aws/describe-instance-status.xml").getInputStream(),
+						StandardCharsets.UTF_8));
+		Assertions.assertEquals("{\"subscription\":" + subscription
+				+ ",\"vm\":{\"id\":\"i-12345678\",\"status\":\"POWERED_ON\",\"busy\":false}}\n",
+				getVmStates(resource, "service:vm:aws"));
+	}
+
+	@Test
+	void getVmStatesNotFound() throws IOException {
+		final var resource = mockEc2("eu-west-1",
+				"Action=DescribeInstanceStatus&IncludeAllInstances=true&InstanceId.1=i-12345678&Version=2016-11-15",
+				HttpStatus.SC_BAD_REQUEST,
+				"<Response><Errors><Error><Code>InvalidInstanceID.NotFound</Code></Error></Errors></Response>");
+		Assertions.assertEquals("{\"subscription\":" + subscription + ",\"error\":\"aws-instance-id\"}\n",
+				getVmStates(resource, null));
+	}
+
+	@Test
+	void getVmStatesBadRequest() throws IOException {
+		final var resource = mockEc2("eu-west-1",
+				"Action=DescribeInstanceStatus&IncludeAllInstances=true&InstanceId.1=i-12345678&Version=2016-11-15",
+				HttpStatus.SC_BAD_REQUEST, "");
+		Assertions.assertEquals("{\"subscription\":" + subscription + ",\"error\":\"aws-failure\"}\n",
+				getVmStates(resource, null));
+	}
+
+	@Test
+	void getVmStatesUnavailable() throws IOException {
+		final var resource = mockEc2("eu-west-1",
+				"Action=DescribeInstanceStatus&IncludeAllInstances=true&InstanceId.1=i-12345678&Version=2016-11-15",
+				HttpStatus.SC_SERVICE_UNAVAILABLE, "");
+		Assertions.assertEquals("{\"subscription\":" + subscription + ",\"error\":\"aws-failure\"}\n",
+				getVmStates(resource, null));
+	}
+
+	@Test
+	void getVmStatesOtherNode() throws IOException {
+		Assertions.assertEquals("", getVmStates(resource, "service:vm:aws:other"));
+		Assertions.assertEquals("", getVmStates(resource, "service:vm:aws:tes"));
+	}
+
+	@Test
+	void getVmStatesNotVisibleProject() {
+		final var project = subscriptionRepository.findOneExpected(subscription).getProject().getId();
+		initSpringSecurityContext("any");
+		Assertions.assertThrows(EntityNotFoundException.class, () -> resource.getVmStates(project, null));
+	}
+
+	@Test
+	void getVmStatesTimeout() throws IOException {
+		configuration.put(VmAwsPluginResource.CONF_STATUS_DEADLINE, "500");
+		configuration.put(VmAwsPluginResource.CONF_STATUS_PARALLELISM, "1");
+		final var resource = spy(this.resource);
+		counterQuery++;
+		doReturn(MOCK_URL + "/" + counterQuery + "/").when(resource).toUrl(ArgumentMatchers.any());
+		httpServer.stubFor(post(urlEqualTo("/mock/" + counterQuery + "/"))
+				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withFixedDelay(3000).withBody(
+						IOUtils.toString(new ClassPathResource("mock-server/aws/describe-instance-status.xml")
+								.getInputStream(), StandardCharsets.UTF_8))));
+		httpServer.start();
+		Assertions.assertEquals("{\"subscription\":" + subscription + ",\"error\":\"timeout\"}\n",
+				getVmStates(resource, null));
+	}
+
+	@Test
+	void getVmDetailsBatched() throws Exception {
+		configuration.put(VmAwsPluginResource.CONF_BATCH_WINDOW, "500");
+		final var describe = IOUtils.toString(new ClassPathResource("mock-server/aws/describe.xml").getInputStream(),
+				StandardCharsets.UTF_8);
+		final var resource = mockEc2("eu-west-1",
+				"Action=DescribeInstances&Filter.1.Name=instance-id&Filter.1.Value.1=i-12345678&Filter.1.Value.2=i-00000001&Version=2016-11-15",
+				HttpStatus.SC_OK, describe);
+		addQueryMock(resource, "ec2", "eu-west-1",
+				"Action=DescribeInstances&Filter.1.Name=instance-id&Filter.1.Value.1=i-00000001&Filter.1.Value.2=i-12345678&Version=2016-11-15",
+				HttpStatus.SC_OK, describe);
+		final Map<String, String> parameters = new HashMap<>(pvResource.getSubscriptionParameters(subscription));
+		final Map<String, String> other = new HashMap<>(parameters);
+		other.put(VmAwsPluginResource.PARAMETER_INSTANCE_ID, "i-00000001");
+
+		// Concurrent lookups of the same account and region
+		final var otherVm = CompletableFuture.supplyAsync(() -> {
+			try {
+				return resource.getVmDetails(other);
+			} catch (final Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		checkVm(resource.getVmDetails(parameters));
+		Assertions.assertEquals("i-00000001", otherVm.join().getId());
+		httpServer.verify(1, postRequestedFor(urlMatching("/mock/.*")));
+	}
+
+	@Test
+	void getVmDetailsNoBatch() throws Exception {
+		configuration.put(VmAwsPluginResource.CONF_BATCH_WINDOW, "0");
+		checkVmDetails(mockAwsVm().getVmDetails(new HashMap<>(pvResource.getSubscriptionParameters(subscription))));
 	}
 
 	@Test
@@ -194,6 +471,29 @@ class VmAwsPluginResourceTest extends AbstractServerTest {
 		Assertions.assertEquals(1, ((Integer) nodeStatusWithData.getData().get("schedules")).intValue());
 	}
 
+	@Test
+	void checkSubscriptionStatusCached() throws Exception {
+		final var parameters = subscriptionResource.getParametersNoCheck(subscription);
+		final var status = mockAwsVm().checkSubscriptionStatus(subscription, null, parameters);
+		Assertions.assertEquals(1, statusCache.size());
+		Assertions.assertEquals(1, ((Integer) status.getData().get("schedules")).intValue());
+		em.createQuery("DELETE FROM VmSchedule").executeUpdate();
+
+		// The last known VM is served without AWS call, the schedules are counted again
+		final var cached = resource.checkSubscriptionStatus(subscription, null, parameters);
+		Assertions.assertSame(status.getData().get("vm"), cached.getData().get("vm"));
+		Assertions.assertEquals(0, ((Integer) cached.getData().get("schedules")).intValue());
+		httpServer.verify(1, postRequestedFor(urlMatching("/mock/.*")));
+	}
+
+	@Test
+	void executeInvalidateStatus() throws Exception {
+		statusCache.load(subscription, () -> CompletableFuture.completedFuture(new AwsVm())).join();
+		Assertions.assertEquals(1, statusCache.size());
+		execute(VmOperation.SHUTDOWN, "Action=StopInstances&InstanceId.1=i-12345678");
+		Assertions.assertEquals(0, statusCache.size());
+	}
+
 	@Test
 	void checkStatus() throws Exception {
 		Assertions.assertTrue(mockAws("s3", "eu-west-1", null, HttpStatus.SC_OK,
@@ -250,10 +550,88 @@ class VmAwsPluginResourceTest extends AbstractServerTest {
 
 	}
 
+	@Test
+	void getHttpPoolStats() throws Exception {
+		final var resource = mockEc2Ok("eu-west-1");
+		resource.findAllByNameOrId("service:vm:aws:test", "INSTANCE_", newUriInfo());
+		final var stats = resource.getHttpPoolStats();
+		Assertions.assertTrue(stats.getMax() > 0);
+		Assertions.assertEquals(0, stats.getLeased());
+		Assertions.assertNotNull(stats.getHosts());
+		Assertions.assertTrue(stats.getAsync().getHosts().containsKey("localhost:" + MOCK_PORT));
+	}
+
+	@Test
+	void findAllByNameOrIdCompressed() throws Exception {
+		final var raw = IOUtils.toByteArray(new ClassPathResource("mock-server/aws/describe.xml").getInputStream());
+		final var compressed = new ByteArrayOutputStream();
+		try (var gzip = new GZIPOutputStream(compressed)) {
+			gzip.write(raw);
+		}
+		final var resource = spy(this.resource);
+		counterQuery++;
+		doReturn(MOCK_URL + "/" + counterQuery + "/").when(resource).toUrl(ArgumentMatchers.any());
+		httpServer.stubFor(post(urlEqualTo("/mock/" + counterQuery + "/"))
+				.withHeader("Accept-Encoding", containing("gzip")).willReturn(aResponse().withStatus(HttpStatus.SC_OK)
+						.withHeader("Content-Encoding", "gzip").withBody(compressed.toByteArray())));
+		httpServer.start();
+
+		final var before = resource.getHttpPoolStats().getTransfer();
+		final var projects = resource.findAllByNameOrId("service:vm:aws:test", "INSTANCE_", newUriInfo());
+		Assertions.assertEquals(6, projects.size());
+		checkVm(projects.getFirst());
+
+		final var after = resource.getHttpPoolStats().getTransfer();
+		Assertions.assertEquals(1, after.getCompressedResponses() - before.getCompressedResponses());
+		final var compressedBytes = after.getCompressedBytes() - before.getCompressedBytes();
+		Assertions.assertTrue(compressedBytes > 0);
+		Assertions.assertTrue(after.getDecompressedBytes() - before.getDecompressedBytes() > compressedBytes);
+	}
+
+	@Test
+	void findAllByNameOrIdMixedCase() throws Exception {
+		// Case-sensitive AWS filters would miss this name without the case variants
+		final var resource = mockEc2Ok("eu-west-1");
+		final var projects = resource.findAllByNameOrId("service:vm:aws:test", "sTaNcE_oN", newUriInfo());
+		Assertions.assertEquals(1, projects.size());
+		Assertions.assertEquals("INSTANCE_ON", projects.getFirst().getName());
+		httpServer.verify(1, postRequestedFor(urlEqualTo("/mock/" + counterQuery + "/")));
+	}
+
+	@Test
+	void findAllByNameOrIdFilters() throws Exception {
+		// All the case variants of the name, and the identifier as is
+		final var response = IOUtils.toString(new ClassPathResource("mock-server/aws/describe-empty.xml")
+				.getInputStream(), StandardCharsets.UTF_8);
+		final var resource = mockEc2("eu-west-1", "Action=DescribeInstances&Filter.1.Name=tag:Name"
+				+ "&Filter.1.Value.1=*web*&Filter.1.Value.2=*weB*&Filter.1.Value.3=*wEb*&Filter.1.Value.4=*wEB*"
+				+ "&Filter.1.Value.5=*Web*&Filter.1.Value.6=*WeB*&Filter.1.Value.7=*WEb*&Filter.1.Value.8=*WEB*"
+				+ "&MaxResults=1000&Version=2016-11-15", HttpStatus.SC_OK, response);
+		addQueryMock(resource, "ec2", "eu-west-1", "Action=DescribeInstances&Filter.1.Name=instance-id"
+				+ "&Filter.1.Value.1=*web*&MaxResults=1000&Version=2016-11-15", HttpStatus.SC_OK, response);
+		Assertions.assertEquals(0, resource.findAllByNameOrId("service:vm:aws:test", "wEb", newUriInfo()).size());
+		httpServer.verify(1, postRequestedFor(urlEqualTo("/mock/" + (counterQuery - 1) + "/")));
+		httpServer.verify(1, postRequestedFor(urlEqualTo("/mock/" + counterQuery + "/")));
+	}
+
+	@Test
+	void findAllByNameOrIdLongName() throws Exception {
+		// Only the longest part having 7 letters is pushed, the remaining part is checked in memory
+		final var resource = mockEc2("eu-west-1", body -> body != null
+				&& body.startsWith("Action=DescribeInstances&Filter.1.Name=tag:Name&Filter.1.Value.1=*nstance_*"
+						+ "&Filter.1.Value.2=*nstancE_*")
+				&& body.endsWith("&Filter.1.Value.128=*NSTANCE_*&MaxResults=1000&Version=2016-11-15"), HttpStatus.SC_OK,
+				IOUtils.toString(new ClassPathResource("mock-server/aws/describe.xml").getInputStream(),
+						StandardCharsets.UTF_8));
+		final var projects = resource.findAllByNameOrId("service:vm:aws:test", "Instance_On", newUriInfo());
+		Assertions.assertEquals(1, projects.size());
+		Assertions.assertEquals("INSTANCE_ON", projects.getFirst().getName());
+		httpServer.verify(1, postRequestedFor(urlEqualTo("/mock/" + counterQuery + "/")));
+	}
+
 	@Test
 	void findAllByNameOrIdNoName() throws Exception {
-		final var projects = mockEc2Ok("eu-west-1").findAllByNameOrId("service:vm:aws:test", "i-00000006",
-				newUriInfo());
+		final var projects = mockEc2ById("i-00000006").findAllByNameOrId("service:vm:aws:test", "i-00000006", newUriInfo());
 		Assertions.assertEquals(1, projects.size());
 		final Vm item = projects.getFirst();
 		Assertions.assertEquals("i-00000006", item.getId());
@@ -262,16 +640,228 @@ class VmAwsPluginResourceTest extends AbstractServerTest {
 
 	@Test
 	void findAllByNameOrIdById() throws Exception {
-		final var projects = mockEc2Ok("eu-west-1").findAllByNameOrId("service:vm:aws:test", "i-00000005",
-				newUriInfo());
+		final var projects = mockEc2ById("i-00000005").findAllByNameOrId("service:vm:aws:test", "i-00000005", newUriInfo());
 		Assertions.assertEquals(1, projects.size());
 		final Vm item = projects.getFirst();
 		Assertions.assertEquals("i-00000005", item.getId());
 		Assertions.assertEquals("INSTANCE_STOPPING", item.getName());
 	}
 
+	@Test
+	void findAllByNameOrIdInventory() throws Exception {
+		this.resource.inventoryCache = inventoryCache;
+		final var resource = mockEc2Ok("eu-west-1");
+
+		// Not yet loaded inventory, the instances are described
+		Assertions.assertEquals(6, resource.findAllByNameOrId("service:vm:aws:test", "INSTANCE_", newUriInfo()).size());
+
+		// Join the inventory load started by the search, the empty loader is only used when already completed
+		final Map<String, String> parameters = new HashMap<>(pvResource.getNodeParameters("service:vm:aws:test"));
+		inventoryCache.load(resource.getAccountKey(parameters), () -> CompletableFuture.completedFuture(null)).join();
+		Assertions.assertEquals(1, inventoryCache.size());
+
+		// Served from memory
+		final var projects = resource.findAllByNameOrId("service:vm:aws:test", "instance_on", newUriInfo());
+		Assertions.assertEquals(1, projects.size());
+		Assertions.assertEquals("i-12345678", projects.getFirst().getId());
+
+		// The inventory load and the filtered search only
+		httpServer.verify(2, postRequestedFor(urlEqualTo("/mock/" + counterQuery + "/")));
+	}
+
+	@Test
+	void executeInvalidateInventory() throws Exception {
+		this.resource.inventoryCache = inventoryCache;
+		final var key = resource.getAccountKey(pvResource.getSubscriptionParameters(subscription));
+		final var vm = new AwsVm();
+		vm.setId("i-12345678");
+		vm.setName("INSTANCE_ON");
+		inventoryCache.load(key, () -> CompletableFuture.completedFuture(List.of(vm))).join();
+		Assertions.assertEquals(1, inventoryCache.size());
+		execute(VmOperation.SHUTDOWN, "Action=StopInstances&InstanceId.1=i-12345678");
+		Assertions.assertEquals(0, inventoryCache.size());
+	}
+
+	@Test
+	void findAllByNameOrIdInRegionsNoVisible() throws Exception {
+		final var result = resource.findAllByNameOrIdInRegions("service:vm:aws:any", "INSTANCE_", newUriInfo());
+		Assertions.assertEquals(0, result.getVms().size());
+		Assertions.assertEquals(0, result.getRegions().size());
+	}
+
+	@Test
+	void findAllByNameOrIdInRegions() throws Exception {
+		final var resource = mockEc2Ok("eu-west-1");
+		addQueryMock(resource, "ec2", "eu-west-1", "Action=DescribeRegions&Version=2016-11-15", HttpStatus.SC_OK,
+				IOUtils.toString(new ClassPathResource("mock-server/aws/describe-regions.xml").getInputStream(),
+						StandardCharsets.UTF_8));
+		addQueryMock(resource, "ec2", "eu-west-3", QUERY_DESCRIBE, HttpStatus.SC_INTERNAL_SERVER_ERROR, "");
+		final var result = resource.findAllByNameOrIdInRegions("service:vm:aws:test", "INSTANCE_", newUriInfo());
+		Assertions.assertEquals(6, result.getVms().size());
+		checkVm(result.getVms().getFirst());
+		Assertions.assertEquals(List.of("eu-west-1", "eu-west-3"), result.getRegions());
+		Assertions.assertEquals(0, result.getTimeouts().size());
+		Assertions.assertEquals(List.of("eu-west-3"), result.getFailures());
+
+		// Regions are cached
+		resource.findAllByNameOrIdInRegions("service:vm:aws:test", "INSTANCE_", newUriInfo());
+		httpServer.verify(1, postRequestedFor(urlEqualTo("/mock/" + (counterQuery - 1) + "/")));
+	}
+
+	@Test
+	void findAllByNameOrIdInRegionsTimeout() throws Exception {
+		configuration.put(VmAwsPluginResource.CONF_SEARCH_REGIONS, "eu-west-1, eu-west-3");
+		configuration.put(VmAwsPluginResource.CONF_SEARCH_DEADLINE, "500");
+		final var resource = mockEc2Ok("eu-west-1");
+		counterQuery++;
+		doReturn(MOCK_URL + "/" + counterQuery + "/").when(resource).toUrl(ArgumentMatchers
+				.argThat(query -> query != null && "eu-west-3".equals(query.getRegion())));
+		httpServer.stubFor(post(urlEqualTo("/mock/" + counterQuery + "/"))
+				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withFixedDelay(3000).withBody(
+						IOUtils.toString(new ClassPathResource("mock-server/aws/describe.xml").getInputStream(),
+								StandardCharsets.UTF_8))));
+		final var result = resource.findAllByNameOrIdInRegions("service:vm:aws:test", "INSTANCE_", newUriInfo());
+		Assertions.assertEquals(6, result.getVms().size());
+		Assertions.assertEquals(List.of("eu-west-1", "eu-west-3"), result.getRegions());
+		Assertions.assertEquals(List.of("eu-west-3"), result.getTimeouts());
+	}
+
+	@Test
+	void findAllByNameOrIdInRegionsDiscoveryTimeout() throws Exception {
+		configuration.put(VmAwsPluginResource.CONF_SEARCH_DEADLINE, "500");
+		final var resource = mockEc2Ok("eu-west-1");
+		counterQuery++;
+		doReturn(MOCK_URL + "/" + counterQuery + "/").when(resource).toUrl(ArgumentMatchers
+				.argThat(query -> query != null && query.getBody().startsWith("Action=DescribeRegions")));
+		httpServer.stubFor(post(urlEqualTo("/mock/" + counterQuery + "/"))
+				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withFixedDelay(3000).withBody(
+						IOUtils.toString(new ClassPathResource("mock-server/aws/describe-regions.xml").getInputStream(),
+								StandardCharsets.UTF_8))));
+
+		// The discovery of the regions is included in the deadline, only the current region is searched
+		final var start = System.currentTimeMillis();
+		final var result = resource.findAllByNameOrIdInRegions("service:vm:aws:test", "INSTANCE_", newUriInfo());
+		Assertions.assertTrue(System.currentTimeMillis() - start < 3000);
+		Assertions.assertEquals(List.of("eu-west-1"), result.getRegions());
+		Assertions.assertEquals(List.of("eu-west-1"), result.getTimeouts());
+	}
+
+	@Test
+	void findAllByNameOrIdPage() throws Exception {
+		final var uriInfo = newUriInfo();
+		uriInfo.getQueryParameters().putSingle(VmAwsPluginResource.QUERY_OFFSET, "1");
+		uriInfo.getQueryParameters().putSingle(VmAwsPluginResource.QUERY_LIMIT, "2");
+		final var projects = mockEc2Ok("eu-west-1").findAllByNameOrId("service:vm:aws:test", "INSTANCE_", uriInfo);
+		Assertions.assertEquals(2, projects.size());
+		Assertions.assertEquals("INSTANCE_PENDING", projects.get(0).getName());
+		Assertions.assertEquals("INSTANCE_SHUTTING_DOWN", projects.get(1).getName());
+	}
+
+	@Test
+	void findAllByNameOrIdPageInventory() throws Exception {
+		this.resource.inventoryCache = inventoryCache;
+		final var vms = new ArrayList<AwsVm>();
+		for (final var name : List.of("vm-c", "vm-a", "other", "vm-b")) {
+			final var vm = new AwsVm();
+			vm.setId("i-" + name);
+			vm.setName(name);
+			vms.add(vm);
+		}
+		final Map<String, String> parameters = new HashMap<>(pvResource.getNodeParameters("service:vm:aws:test"));
+		inventoryCache.load(resource.getAccountKey(parameters), () -> CompletableFuture.completedFuture(vms)).join();
+		final var uriInfo = newUriInfo();
+		uriInfo.getQueryParameters().putSingle(VmAwsPluginResource.QUERY_OFFSET, "1");
+		uriInfo.getQueryParameters().putSingle(VmAwsPluginResource.QUERY_LIMIT, "5");
+		final var projects = resource.findAllByNameOrId("service:vm:aws:test", "VM-", uriInfo);
+		Assertions.assertEquals(List.of("vm-b", "vm-c"), projects.stream().map(AwsVm::getName).toList());
+	}
+
+	@Test
+	void findAllByNameOrIdEscaped() throws Exception {
+		final var resource = mockEc2("eu-west-1", "Action=DescribeInstances&Filter.1.Name=tag:Name"
+				+ "&Filter.1.Value.1=*a%5C*1%5C%3F*&Filter.1.Value.2=*A%5C*1%5C%3F*"
+				+ "&MaxResults=1000&Version=2016-11-15", HttpStatus.SC_OK,
+				IOUtils.toString(new ClassPathResource("mock-server/aws/describe-empty.xml").getInputStream(),
+						StandardCharsets.UTF_8));
+		Assertions.assertEquals(0, resource.findAllByNameOrId("service:vm:aws:test", "a*1?", newUriInfo()).size());
+		httpServer.verify(1, postRequestedFor(urlEqualTo("/mock/" + counterQuery + "/")));
+	}
+
+	@Test
+	void findAllByNameOrIdPages() throws Exception {
+		configuration.put(VmAwsPluginResource.CONF_PAGE_SIZE, "5");
+		final var resource = mockEc2Pages("&Filter.1.Name=tag:Name&Filter.1.Value.1=*e_*&Filter.1.Value.2=*E_*");
+		final var projects = resource.findAllByNameOrId("service:vm:aws:test", "e_", newUriInfo());
+		Assertions.assertEquals(2, projects.size());
+		Assertions.assertEquals("PAGE_A", projects.get(0).getName());
+		Assertions.assertEquals("i-00000013", projects.get(0).getId());
+		Assertions.assertEquals("PAGE_B", projects.get(1).getName());
+		httpServer.verify(1, postRequestedFor(urlEqualTo("/mock/" + (counterQuery - 1) + "/")));
+		httpServer.verify(1, postRequestedFor(urlEqualTo("/mock/" + counterQuery + "/")));
+	}
+
+	@Test
+	void getDescribeInstancesAsyncLimit() throws Exception {
+		configuration.put(VmAwsPluginResource.CONF_PAGE_SIZE, "5");
+		final var resource = mockEc2Pages("");
+		final Map<String, String> parameters = new HashMap<>(pvResource.getNodeParameters("service:vm:aws:test"));
+		final var vms = resource.getDescribeInstancesAsync(parameters, "", true, vm -> true, 1).get();
+		Assertions.assertEquals(1, vms.size());
+		Assertions.assertEquals("i-00000011", vms.get(0).getId());
+		Assertions.assertEquals(1, vms.get(0).getTags().size());
+	}
+
+	@Test
+	void getDescribeInstancesAsyncNextPageError() throws Exception {
+		final var resource = mockEc2("eu-west-1", "Action=DescribeInstances&MaxResults=1000&Version=2016-11-15",
+				HttpStatus.SC_OK, IOUtils.toString(new ClassPathResource("mock-server/aws/describe-page-1.xml")
+						.getInputStream(), StandardCharsets.UTF_8));
+		addQueryMock(resource, "ec2", "eu-west-1",
+				"Action=DescribeInstances&MaxResults=1000&NextToken=token%261%2B%2F%3D&Version=2016-11-15",
+				HttpStatus.SC_BAD_REQUEST, "");
+		final Map<String, String> parameters = new HashMap<>(pvResource.getNodeParameters("service:vm:aws:test"));
+		final var vms = resource.getDescribeInstancesAsync(parameters, "", false, vm -> true, 10).get();
+		Assertions.assertEquals(2, vms.size());
+	}
+
+	@Test
+	void getDescribeInstancesAsyncFirstPageError() throws Exception {
+		final var resource = mockEc2("eu-west-1", QUERY_ALL, HttpStatus.SC_BAD_REQUEST, "");
+		final Map<String, String> parameters = new HashMap<>(pvResource.getNodeParameters("service:vm:aws:test"));
+		Assertions.assertNull(resource.getDescribeInstancesAsync(parameters, "", false, vm -> true, 10).get());
+	}
+
+	/**
+	 * Mock two pages of described instances, linked by a token to be encoded.
+	 */
+	private VmAwsPluginResource mockEc2Pages(final String filter) throws IOException {
+		final var resource = mockEc2("eu-west-1", "Action=DescribeInstances" + filter + "&MaxResults=5&Version=2016-11-15",
+				HttpStatus.SC_OK, IOUtils.toString(new ClassPathResource("mock-server/aws/describe-page-1.xml")
+						.getInputStream(), StandardCharsets.UTF_8));
+		addQueryMock(resource, "ec2", "eu-west-1",
+				"Action=DescribeInstances" + filter + "&MaxResults=5&NextToken=token%261%2B%2F%3D&Version=2016-11-15",
+				HttpStatus.SC_OK, IOUtils.toString(
+						new ClassPathResource("mock-server/aws/describe-page-2.xml").getInputStream(),
+						StandardCharsets.UTF_8));
+		return resource;
+	}
+
+	/**
+	 * Mock the search of an instance identifier: by name and by identifier. Both queries return all instances.
+	 */
+	private VmAwsPluginResource mockEc2ById(final String id) throws IOException {
+		final var response = IOUtils.toString(new ClassPathResource("mock-server/aws/describe.xml").getInputStream(),
+				StandardCharsets.UTF_8);
+		final var resource = mockEc2("eu-west-1", "Action=DescribeInstances&Filter.1.Name=tag:Name&Filter.1.Value.1=*"
+				+ id + "*&Filter.1.Value.2=*" + id.toUpperCase() + "*&MaxResults=1000&Version=2016-11-15",
+				HttpStatus.SC_OK, response);
+		addQueryMock(resource, "ec2", "eu-west-1", "Action=DescribeInstances&Filter.1.Name=instance-id&Filter.1.Value.1=*"
+				+ id + "*&MaxResults=1000&Version=2016-11-15", HttpStatus.SC_OK, response);
+		return resource;
+	}
+
 	private VmAwsPluginResource mockEc2Ok(final String region) throws IOException {
-		return mockEc2(region, "Action=DescribeInstances&Version=2016-11-15", HttpStatus.SC_OK,
+		return mockEc2(region, QUERY_DESCRIBE, HttpStatus.SC_OK,
 				IOUtils.toString(new ClassPathResource("mock-server/aws/describe.xml").getInputStream(), StandardCharsets.UTF_8));
 	}
 
@@ -283,7 +873,7 @@ class VmAwsPluginResourceTest extends AbstractServerTest {
 
 	@Test
 	void findAllByNameOrIdEmpty() throws Exception {
-		final var projects = mockEc2("eu-west-1", "Action=DescribeInstances&Version=2016-11-15", HttpStatus.SC_OK,
+		final var projects = mockEc2("eu-west-1", QUERY_DESCRIBE, HttpStatus.SC_OK,
 				IOUtils.toString(new ClassPathResource("mock-server/aws/describe-empty.xml").getInputStream(), StandardCharsets.UTF_8))
 				.findAllByNameOrId("service:vm:aws:test", "INSTANCE_", newUriInfo());
 		Assertions.assertEquals(0, projects.size());
@@ -303,6 +893,26 @@ class VmAwsPluginResourceTest extends AbstractServerTest {
 		Assertions.assertEquals("vm-operation-execute", Assertions.assertThrows(BusinessException.class, () -> resource.execute(newExecution(VmOperation.SHUTDOWN))).getMessage());
 	}
 
+	@Test
+	void executeThrottled() throws Exception {
+		final var resource = spy(this.resource);
+		addQueryMock(resource, "ec2", "eu-west-1", "Action=StopInstances&InstanceId.1=i-12345678&Version=2016-11-15",
+				HttpStatus.SC_OK, IOUtils.toString(
+						new ClassPathResource("mock-server/aws/stopInstances.xml").getInputStream(), StandardCharsets.UTF_8));
+
+		// Only the first attempt is throttled
+		httpServer.stubFor(post(urlEqualTo("/mock/" + counterQuery + "/")).inScenario("throttling")
+				.whenScenarioStateIs(Scenario.STARTED).willSetStateTo("throttled")
+				.willReturn(aResponse().withStatus(HttpStatus.SC_SERVICE_UNAVAILABLE).withBody(IOUtils.toString(
+						new ClassPathResource("mock-server/aws/requestLimitExceeded.xml").getInputStream(),
+						StandardCharsets.UTF_8))));
+		addVmDetailsMock(resource);
+		httpServer.start();
+		final var execution = newExecution(VmOperation.SHUTDOWN);
+		resource.execute(execution);
+		Assertions.assertEquals("INSTANCE_ON,i-12345678", execution.getVm());
+	}
+
 	@Test
 	void executeOff() throws Exception {
 		execute(VmOperation.OFF, "Action=StopInstances&Force=true&InstanceId.1=i-12345678");
@@ -454,6 +1064,14 @@ class VmAwsPluginResourceTest extends AbstractServerTest {
 		return mockAws("ec2", region, body, status, response);
 	}
 
+	private VmAwsPluginResource mockEc2(final String region, final Predicate<String> body, final int status,
+			final String response) {
+		final var resource = spy(this.resource);
+		addQueryMock(resource, "ec2", region, body, status, response);
+		httpServer.start();
+		return resource;
+	}
+
 	private VmAwsPluginResource mockAws(final String service, final String region, final String body, final int status,
 			final String response) {
 		final var resource = spy(this.resource);
@@ -464,10 +1082,15 @@ class VmAwsPluginResourceTest extends AbstractServerTest {
 
 	private void addQueryMock(final VmAwsPluginResource resource, final String service, final String region,
 			final String body, final int status, final String response) {
+		addQueryMock(resource, service, region, b -> Objects.equals(body, b), status, response);
+	}
+
+	private void addQueryMock(final VmAwsPluginResource resource, final String service, final String region,
+			final Predicate<String> body, final int status, final String response) {
 		counterQuery++;
 		doReturn(MOCK_URL + "/" + counterQuery + "/").when(resource)
 				.toUrl(ArgumentMatchers.argThat(query -> query.getService().equals(service) && query.getRegion().equals(region)
-						&& ((body == null && null == query.getBody()) || query.getBody().equals(body))));
+						&& body.test(query.getBody())));
 		httpServer.stubFor(post(urlEqualTo("/mock/" + counterQuery + "/"))
 				.willReturn(aResponse().withStatus(status).withBody(response)));
 	}
@@ -502,6 +1125,10 @@ class VmAwsPluginResourceTest extends AbstractServerTest {
 		Assertions.assertEquals("public", item.getNetworks().get(2).getType());
 		Assertions.assertEquals("0000:0000:0000:0000:0000:0000:0000:0000", item.getNetworks().get(2).getIp());
 		Assertions.assertEquals("eu-west-1b", item.getAz());
+
+		// Tags
+		Assertions.assertEquals(2, item.getTags().size());
+		Assertions.assertEquals("Custom description", item.getTags().get("description"));
 	}
 
 	private boolean validateAccess(int status) {
@@ -510,7 +1137,6 @@ class VmAwsPluginResourceTest extends AbstractServerTest {
 		SpringUtils.getApplicationContext().getAutowireCapableBeanFactory().autowireBean(resource);
 		resource = spy(resource);
 		final var mockRequest = new CurlRequest("GET", MOCK_URL, null);
-		mockRequest.setSaveResponse(true);
 		parameters.put("service:vm:aws:region", "any");
 		doReturn(mockRequest).when(resource).newRequest(ArgumentMatchers.any(AWS4SignatureQueryBuilder.class),
 				ArgumentMatchers.anyMap());
@@ -537,9 +1163,12 @@ class VmAwsPluginResourceTest extends AbstractServerTest {
 		final var resource = new VmAwsPluginResource();
 		SpringUtils.getApplicationContext().getAutowireCapableBeanFactory().autowireBean(resource);
 		resource.snapshotResource = mock(VmAwsSnapshotResource.class);
+		resource.statusCache = mock(AwsStatusCache.class);
 		final var transientTask = new VmSnapshotStatus();
+		transientTask.setLocked(subscriptionRepository.findOneExpected(subscription));
 		resource.snapshot(transientTask);
 		verify(resource.snapshotResource, times(1)).create(transientTask);
+		verify(resource.statusCache, times(1)).invalidate(subscription);
 	}
 
 	@Test
@@ -547,9 +1176,12 @@ class VmAwsPluginResourceTest extends AbstractServerTest {
 		final var resource = new VmAwsPluginResource();
 		SpringUtils.getApplicationContext().getAutowireCapableBeanFactory().autowireBean(resource);
 		resource.snapshotResource = mock(VmAwsSnapshotResource.class);
+		resource.statusCache = mock(AwsStatusCache.class);
 		final var transientTask = new VmSnapshotStatus();
+		transientTask.setLocked(subscriptionRepository.findOneExpected(subscription));
 		resource.delete(transientTask);
 		verify(resource.snapshotResource, times(1)).delete(transientTask);
+		verify(resource.statusCache, times(1)).invalidate(subscription);
 	}
 
 	@Test
@@ -20,6 +20,7 @@ import org.ligoj.app.plugin.vm.model.VmSchedule;
 import org.ligoj.app.plugin.vm.model.VmSnapshotStatus;
 import org.ligoj.app.plugin.vm.snapshot.Snapshot;
 import org.ligoj.app.plugin.vm.snapshot.VmSnapshotResource;
+import org.ligoj.app.plugin.vmaws.http.ResponseParser;
 import org.ligoj.app.resource.subscription.SubscriptionResource;
 import org.ligoj.bootstrap.core.DateUtils;
 import org.ligoj.bootstrap.core.resource.BusinessException;
@@ -31,11 +32,14 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import static org.mockito.Mockito.*;
 
@@ -73,6 +77,21 @@ class VmAwsSnapshotResourceTest extends AbstractServerTest {
 		applicationContext.getAutowireCapableBeanFactory().autowireBean(resource);
 		resource.snapshotResource = mock(VmSnapshotResource.class);
 		resource.resource = mock(VmAwsPluginResource.class);
+
+		// Asynchronous calls are served by the synchronous mocks, and streamed to the given parser
+		when(resource.resource.processEC2Async(ArgumentMatchers.anyInt(), ArgumentMatchers.any(),
+				ArgumentMatchers.any(ResponseParser.class)))
+				.thenAnswer(i -> parse(i.getArgument(2), resource.resource.processEC2(i.getArgument(0, Integer.class),
+						i.<Function<Map<String, String>, String>>getArgument(1))));
+	}
+
+	private <T> CompletableFuture<T> parse(final ResponseParser<T> parser, final String response) {
+		try {
+			return CompletableFuture.completedFuture(response == null ? null
+					: parser.parse(new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8))));
+		} catch (final Exception e) {
+			return CompletableFuture.failedFuture(e);
+		}
 	}
 
 	@Test
@@ -489,7 +508,7 @@ class VmAwsSnapshotResourceTest extends AbstractServerTest {
 	}
 
 	@Test
-	void deleteSearchingNotFound() throws SAXException, IOException, ParserConfigurationException {
+	void deleteSearchingNotFound() throws SAXException, IOException {
 		final var status = mockDeleteStatus();
 
 		// Main call
@@ -506,7 +525,7 @@ class VmAwsSnapshotResourceTest extends AbstractServerTest {
 	}
 
 	@Test
-	void deleteUnregisteringFailed() throws SAXException, IOException, ParserConfigurationException {
+	void deleteUnregisteringFailed() throws SAXException, IOException {
 		final var status = mockDeleteStatus();
 		mockAws("Action=DescribeImages&Owner.1=self&ImageId.1=ami-00000004",
 				"mock-server/aws/describe-images-00000004.xml");
@@ -514,7 +533,7 @@ class VmAwsSnapshotResourceTest extends AbstractServerTest {
 	}
 
 	@Test
-	void deleteUnregisteringReturnFalse() throws SAXException, IOException, ParserConfigurationException {
+	void deleteUnregisteringReturnFalse() throws SAXException, IOException {
 		final var status = mockDeleteStatus();
 		mockAws("Action=DescribeImages&Owner.1=self&ImageId.1=ami-00000004",
 				"mock-server/aws/describe-images-00000004.xml");
@@ -530,7 +549,7 @@ class VmAwsSnapshotResourceTest extends AbstractServerTest {
 	}
 
 	private void checkUnregisteringFail(final VmSnapshotStatus status)
-			throws SAXException, IOException, ParserConfigurationException {
+			throws SAXException, IOException {
 		resource.delete(status);
 		Assertions.assertTrue(status.isFinished());
 		Assertions.assertTrue(status.isFailed());
@@ -543,7 +562,7 @@ class VmAwsSnapshotResourceTest extends AbstractServerTest {
 	}
 
 	@Test
-	void deleteSnapshotsFail() throws SAXException, IOException, ParserConfigurationException {
+	void deleteSnapshotsFail() throws SAXException, IOException {
 		final var status = mockDeleteStatus();
 		mockAws("Action=DescribeImages&Owner.1=self&ImageId.1=ami-00000004",
 				"mock-server/aws/describe-images-00000004-multiple-volumes.xml");
@@ -552,7 +571,7 @@ class VmAwsSnapshotResourceTest extends AbstractServerTest {
 	}
 
 	@Test
-	void deleteSnapshotsReturnFalse() throws SAXException, IOException, ParserConfigurationException {
+	void deleteSnapshotsReturnFalse() throws SAXException, IOException {
 		final var status = mockDeleteStatus();
 		mockAws("Action=DescribeImages&Owner.1=self&ImageId.1=ami-00000004",
 				"mock-server/aws/describe-images-00000004-multiple-volumes.xml");
@@ -563,7 +582,7 @@ class VmAwsSnapshotResourceTest extends AbstractServerTest {
 	}
 
 	private void checkDeleteSnapshotsFail(final VmSnapshotStatus status)
-			throws SAXException, IOException, ParserConfigurationException {
+			throws SAXException, IOException {
 		resource.delete(status);
 		Assertions.assertTrue(status.isFinished());
 		Assertions.assertTrue(status.isFailed());
@@ -576,7 +595,7 @@ class VmAwsSnapshotResourceTest extends AbstractServerTest {
 	}
 
 	@Test
-	void delete() throws SAXException, IOException, ParserConfigurationException {
+	void delete() throws SAXException, IOException {
 		final var status = mockDeleteStatus();
 		mockAws("Action=DescribeImages&Owner.1=self&ImageId.1=ami-00000004",
 				"mock-server/aws/describe-images-00000004-multiple-volumes.xml");
@@ -595,7 +614,7 @@ class VmAwsSnapshotResourceTest extends AbstractServerTest {
 	}
 
 	@Test
-	void createTagsFail() throws SAXException, IOException, ParserConfigurationException {
+	void createTagsFail() throws SAXException, IOException {
 		final var status = mockStatus();
 		mockAws("Action=CreateImage&NoReboot=false&InstanceId=i-12345678&Name=ligoj-snapshot/" + subscription + "/"
 				+ new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(status.getStart())
@@ -615,7 +634,7 @@ class VmAwsSnapshotResourceTest extends AbstractServerTest {
 	}
 
 	private void checkCreateTagsFail(final VmSnapshotStatus status)
-			throws SAXException, IOException, ParserConfigurationException {
+			throws SAXException, IOException {
 		// Main call
 		resource.create(status);
 
@@ -60,6 +60,17 @@ class AWS4SignerBaseTest {
 		Assertions.assertEquals("header1:h1\nheader2:h 2\n", headerNames);
 	}
 
+	/**
+	 * Test method for
+	 * {@link AWS4SignerBase#getCanonicalizedHeaderString(java.util.Map)}.
+	 */
+	@Test
+	void testGetCanonicalizedHeaderStringWhiteSpaces() {
+		final var headerNames = signer
+				.getCanonicalizedHeaderString(Map.of("Header2", " h\t\r\n2 ", "header1", "h\f\u000B1"));
+		Assertions.assertEquals("header1:h 1\nheader2: h 2 \n", headerNames);
+	}
+
 	/**
 	 * Test method for
 	 * {@link AWS4SignerBase#getCanonicalRequest(java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String)}.
@@ -175,7 +186,20 @@ class AWS4SignerBaseTest {
 	}
 
 	/**
-	 * Test method for {@link AWS4SignerBase#sign(java.lang.String, byte[])}.
+	 * Test method for {@link AWS4SignerBase#hash(java.lang.String)}.
+	 */
+	@Test
+	void testHashNotAscii() {
+		Assertions.assertEquals("982d9e3eb996f559e633f4d194def3761d909f5a3b647d1a851fead67c32c9d1",
+				signer.hash("text"));
+		Assertions.assertEquals("4a99557e4033c3539de2eb65472017cad5f9557f7a0625a09f1c3f6e2ba69c4c",
+				signer.hash("\u00e9"));
+		Assertions.assertEquals("982d9e3eb996f559e633f4d194def3761d909f5a3b647d1a851fead67c32c9d1",
+				signer.hash("text"));
+	}
+
+	/**
+	 * Test method for {@link AWS4SignerBase#sign(CharSequence, byte[])}.
 	 */
 	@Test
 	void testSign() {
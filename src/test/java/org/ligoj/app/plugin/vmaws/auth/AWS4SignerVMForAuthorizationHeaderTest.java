@@ -6,7 +6,9 @@ package org.ligoj.app.plugin.vmaws.auth;
 import java.time.Clock;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.Map;
 
+import org.apache.commons.codec.binary.Hex;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.test.util.ReflectionTestUtils;
@@ -51,4 +53,34 @@ class AWS4SignerVMForAuthorizationHeaderTest {
 				signer.computeSignature(signatureQuery));
 	}
 
+	/**
+	 * Test method for
+	 * {@link AWS4SignerVMForAuthorizationHeader#getSigningKey(String, String, String, String)}.
+	 */
+	@Test
+	void getSigningKey() {
+		final var key = signer.getSigningKey("awsSecretKey", "20170529", "eu-west-1", "s3");
+		Assertions.assertEquals(
+				Hex.encodeHexString(signer.sign("aws4_request", signer.sign("s3",
+						signer.sign("eu-west-1", signer.sign("20170529", "AWS4awsSecretKey".getBytes()))))),
+				Hex.encodeHexString(key));
+
+		// Cached for the same day, region and service
+		Assertions.assertSame(key, signer.getSigningKey("awsSecretKey", "20170529", "eu-west-1", "s3"));
+		Assertions.assertNotSame(key, signer.getSigningKey("awsSecretKey", "20170529", "eu-west-1", "ec2"));
+		Assertions.assertNotSame(key, signer.getSigningKey("awsSecretKey2", "20170529", "eu-west-1", "s3"));
+		Assertions.assertEquals(3, getSigningKeys().size());
+
+		// The secret is never a part of the cache key
+		Assertions.assertFalse(getSigningKeys().keySet().toString().contains("awsSecretKey"));
+
+		// Day rollover
+		Assertions.assertNotSame(key, signer.getSigningKey("awsSecretKey", "20170530", "eu-west-1", "s3"));
+		Assertions.assertEquals(1, getSigningKeys().size());
+	}
+
+	private Map<?, ?> getSigningKeys() {
+		return (Map<?, ?>) ReflectionTestUtils.getField(signer, "signingKeys");
+	}
+
 }
@@ -0,0 +1,154 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws.http;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.mockito.ArgumentMatchers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class of {@link AwsCircuitBreaker}
+ */
+class AwsCircuitBreakerTest {
+
+	private static final AwsResponse<String> FAILED = new AwsResponse<>(AwsResponse.STATUS_TRANSPORT_ERROR, null, null);
+
+	private static final AwsResponse<String> THROTTLED = new AwsResponse<>(503, null,
+			"<Response><Errors><Error><Code>RequestLimitExceeded</Code></Error></Errors></Response>");
+
+	private static final AwsResponse<String> OK = new AwsResponse<>(200, "<DescribeInstancesResponse/>", null);
+
+	private AwsCircuitBreaker breaker;
+
+	@BeforeEach
+	void init() {
+		breaker = new AwsCircuitBreaker();
+		breaker.configuration = mock(ConfigurationResource.class);
+		when(breaker.configuration.get(ArgumentMatchers.anyString(), ArgumentMatchers.anyInt()))
+				.thenAnswer(i -> i.getArgument(1));
+		when(breaker.configuration.get(AwsCircuitBreaker.CONF_OPEN_DURATION, 30)).thenReturn(0);
+		when(breaker.configuration.get(AwsCircuitBreaker.CONF_BULKHEAD, 10)).thenReturn(1);
+		when(breaker.configuration.get(AwsCircuitBreaker.CONF_BULKHEAD_WAIT, 1000)).thenReturn(50);
+		breaker.rateLimiter = new AwsRateLimiter();
+		breaker.afterPropertiesSet();
+	}
+
+	@Test
+	void execute() {
+		final var calls = new AtomicInteger();
+		for (var i = 0; i < 4; i++) {
+			Assertions.assertSame(FAILED, breaker.execute("key", "eu-west-1", "ec2", () -> {
+				calls.incrementAndGet();
+				return FAILED;
+			}));
+		}
+		Assertions.assertEquals(4, calls.get());
+		Assertions.assertEquals(AwsCircuitBreaker.State.CLOSED, breaker.getCircuit("eu-west-1", "ec2").getState());
+
+		// Throttling does not reveal an unhealthy region
+		Assertions.assertSame(THROTTLED, breaker.execute("key", "eu-west-1", "ec2", () -> THROTTLED));
+		Assertions.assertEquals(AwsCircuitBreaker.State.CLOSED, breaker.getCircuit("eu-west-1", "ec2").getState());
+
+		breaker.execute("key", "eu-west-1", "ec2", () -> FAILED);
+		breaker.execute("key", "eu-west-1", "ec2", () -> FAILED);
+		breaker.execute("key", "eu-west-1", "ec2", () -> FAILED);
+		breaker.execute("key", "eu-west-1", "ec2", () -> FAILED);
+		breaker.execute("key", "eu-west-1", "ec2", () -> FAILED);
+		Assertions.assertEquals(AwsCircuitBreaker.State.OPEN, breaker.getCircuit("eu-west-1", "ec2").getState());
+
+		// Other regions and services are not impacted
+		Assertions.assertSame(OK, breaker.execute("key", "eu-west-3", "ec2", () -> OK));
+		Assertions.assertSame(OK, breaker.execute("key", "eu-west-1", "sts", () -> OK));
+	}
+
+	@Test
+	void executeHalfOpen() {
+		for (var i = 0; i < 5; i++) {
+			breaker.execute("key", "eu-west-1", "ec2", () -> FAILED);
+		}
+		final var circuit = breaker.getCircuit("eu-west-1", "ec2");
+		Assertions.assertEquals(AwsCircuitBreaker.State.OPEN, circuit.getState());
+
+		// Failed probe opens again the circuit
+		Assertions.assertSame(FAILED, breaker.execute("key", "eu-west-1", "ec2", () -> FAILED));
+		Assertions.assertEquals(AwsCircuitBreaker.State.OPEN, circuit.getState());
+
+		// Succeeded probe closes the circuit
+		Assertions.assertSame(OK, breaker.execute("key", "eu-west-1", "ec2", () -> OK));
+		Assertions.assertEquals(AwsCircuitBreaker.State.CLOSED, circuit.getState());
+	}
+
+	@Test
+	void executeOpen() {
+		when(breaker.configuration.get(AwsCircuitBreaker.CONF_OPEN_DURATION, 30)).thenReturn(30);
+		breaker.afterPropertiesSet();
+		for (var i = 0; i < 5; i++) {
+			breaker.execute("key", "eu-west-1", "ec2", () -> FAILED);
+		}
+		final var calls = new AtomicInteger();
+		Assertions.assertEquals(AwsResponse.STATUS_REJECTED, breaker.execute("key", "eu-west-1", "ec2", () -> {
+			calls.incrementAndGet();
+			return OK;
+		}).getStatus());
+		Assertions.assertEquals(AwsResponse.STATUS_REJECTED,
+				breaker.executeAsync("key", "eu-west-1", "ec2", () -> CompletableFuture.completedFuture(OK)).join()
+						.getStatus());
+		Assertions.assertEquals(0, calls.get());
+
+		breaker.reset();
+		Assertions.assertSame(OK, breaker.execute("key", "eu-west-1", "ec2", () -> OK));
+	}
+
+	@Test
+	void executeFullBulkhead() throws InterruptedException {
+		final var started = new CountDownLatch(1);
+		final var release = new CountDownLatch(1);
+		final var executor = Executors.newSingleThreadExecutor();
+		try {
+			executor.submit(() -> breaker.execute("key", "eu-west-1", "ec2", () -> {
+				started.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return OK;
+			}));
+			Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+			// The only slot of this account and region is used
+			Assertions.assertEquals(AwsResponse.STATUS_REJECTED, breaker.execute("key", "eu-west-1", "sts", () -> OK).getStatus());
+			Assertions.assertEquals(AwsResponse.STATUS_REJECTED,
+					breaker.executeAsync("key", "eu-west-1", "ec2", () -> CompletableFuture.completedFuture(OK)).join()
+							.getStatus());
+
+			// Other regions are not impacted
+			Assertions.assertSame(OK, breaker.execute("key", "eu-west-3", "ec2", () -> OK));
+
+			// Other accounts of this region are not impacted
+			Assertions.assertSame(OK, breaker.execute("key2", "eu-west-1", "ec2", () -> OK));
+
+			// The bulkheads are released by the reset
+			breaker.reset();
+			Assertions.assertSame(OK, breaker.execute("key", "eu-west-1", "ec2", () -> OK));
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+		Assertions.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		Assertions.assertSame(OK,
+				breaker.executeAsync("key", "eu-west-1", "ec2", () -> CompletableFuture.completedFuture(OK)).join());
+	}
+}
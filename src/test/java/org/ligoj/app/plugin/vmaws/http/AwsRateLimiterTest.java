@@ -0,0 +1,150 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws.http;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.mockito.ArgumentMatchers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class of {@link AwsRateLimiter}
+ */
+class AwsRateLimiterTest {
+
+	private static final AwsResponse<String> THROTTLED = new AwsResponse<>(503, null,
+			"<Response><Errors><Error><Code>RequestLimitExceeded</Code><Message>Request limit exceeded.</Message></Error></Errors></Response>");
+
+	private static final AwsResponse<String> OK = new AwsResponse<>(200, "<DescribeInstancesResponse/>", null);
+
+	private AwsRateLimiter limiter;
+
+	@BeforeEach
+	void init() {
+		limiter = new AwsRateLimiter();
+		limiter.configuration = mock(ConfigurationResource.class);
+		when(limiter.configuration.get(ArgumentMatchers.anyString(), ArgumentMatchers.anyInt()))
+				.thenAnswer(i -> i.getArgument(1));
+		limiter.afterPropertiesSet();
+	}
+
+	@Test
+	void isThrottled() {
+		Assertions.assertTrue(limiter.isThrottled(THROTTLED));
+		Assertions.assertTrue(limiter.isThrottled(new AwsResponse<>(429, null, null)));
+		Assertions.assertFalse(limiter.isThrottled(OK));
+		Assertions.assertFalse(limiter.isThrottled(new AwsResponse<>(AwsResponse.STATUS_TRANSPORT_ERROR, null, null)));
+		Assertions.assertFalse(limiter.isThrottled(new AwsResponse<>(400, null,
+				"<Response><Errors><Error><Code>AuthFailure</Code></Error></Errors></Response>")));
+	}
+
+	@Test
+	void execute() {
+		final var calls = new AtomicInteger();
+		Assertions.assertSame(OK, limiter.execute("key/eu-west-1", () -> calls.incrementAndGet() < 3 ? THROTTLED : OK));
+		Assertions.assertEquals(3, calls.get());
+
+		// Rate has been lowered by the throttling
+		Assertions.assertTrue(limiter.getBucket("key/eu-west-1").getRate() < 20);
+		Assertions.assertEquals(20, limiter.getBucket("key/eu-west-3").getRate());
+	}
+
+	@Test
+	void executeTooManyRetries() {
+		final var calls = new AtomicInteger();
+		Assertions.assertSame(THROTTLED, limiter.execute("key/eu-west-1", () -> {
+			calls.incrementAndGet();
+			return THROTTLED;
+		}));
+		Assertions.assertEquals(5, calls.get());
+	}
+
+	@Test
+	void executeNoMoreBudget() {
+		final var bucket = limiter.getBucket("key/eu-west-1");
+		while (bucket.tryRetry()) {
+			// Consume all the budget
+		}
+		final var calls = new AtomicInteger();
+		Assertions.assertSame(THROTTLED, limiter.execute("key/eu-west-1", () -> {
+			calls.incrementAndGet();
+			return THROTTLED;
+		}));
+		Assertions.assertEquals(1, calls.get());
+	}
+
+	@Test
+	void executeNotAnswered() {
+		final var bucket = limiter.getBucket("key/eu-west-1");
+		bucket.onThrottled();
+
+		// Neither a rejected, a not received nor a failed response restores the rate
+		for (final var status : new int[] { AwsResponse.STATUS_REJECTED, AwsResponse.STATUS_TRANSPORT_ERROR, 500 }) {
+			limiter.execute("key/eu-west-1", () -> new AwsResponse<>(status, null, null));
+			limiter.executeAsync("key/eu-west-1",
+					() -> CompletableFuture.completedFuture(new AwsResponse<>(status, null, null))).join();
+		}
+		Assertions.assertEquals(10, bucket.getRate());
+
+		// A 4xx answer does
+		limiter.execute("key/eu-west-1", () -> new AwsResponse<>(400, null, null));
+		Assertions.assertEquals(10.4, bucket.getRate(), 0.001);
+	}
+
+	@Test
+	void executeAsync() {
+		final var calls = new AtomicInteger();
+		Assertions.assertSame(OK, limiter.executeAsync("key/eu-west-1",
+				() -> CompletableFuture.completedFuture(calls.incrementAndGet() < 2 ? THROTTLED : OK))
+				.join());
+		Assertions.assertEquals(2, calls.get());
+	}
+
+	@Test
+	void executeLongWait() {
+		// Queue more requests than the maximal wait of 30s allows at 20/s
+		final var bucket = limiter.getBucket("key/eu-west-1");
+		for (var i = 0; i < 50 + 20 * 30; i++) {
+			bucket.acquire(Long.MAX_VALUE);
+		}
+		final var calls = new AtomicInteger();
+		Assertions.assertEquals(AwsResponse.STATUS_REJECTED, limiter.execute("key/eu-west-1", () -> {
+			calls.incrementAndGet();
+			return OK;
+		}).getStatus());
+		Assertions.assertEquals(AwsResponse.STATUS_REJECTED, limiter.executeAsync("key/eu-west-1", () -> {
+			calls.incrementAndGet();
+			return CompletableFuture.completedFuture(OK);
+		}).join().getStatus());
+		Assertions.assertEquals(0, calls.get());
+	}
+
+	@Test
+	void acquireBurst() {
+		final var bucket = new AwsRateLimiter.Bucket(10, 2, 1);
+		Assertions.assertEquals(0, bucket.acquire(Long.MAX_VALUE));
+		Assertions.assertEquals(0, bucket.acquire(Long.MAX_VALUE));
+
+		// Burst is consumed, about 100ms to wait
+		Assertions.assertTrue(bucket.acquire(Long.MAX_VALUE) > 50_000_000L);
+	}
+
+	@Test
+	void acquireMaxWait() {
+		final var bucket = new AwsRateLimiter.Bucket(1, 1, 1);
+		Assertions.assertEquals(0, bucket.acquire(0));
+
+		// About 1s to wait, rejected without taking a token
+		Assertions.assertEquals(-1, bucket.acquire(100_000_000L));
+		final var wait = bucket.acquire(Long.MAX_VALUE);
+		Assertions.assertTrue(wait > 500_000_000L && wait <= 1_000_000_000L);
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws.http;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Test class of {@link MicroBatcher}
+ */
+class MicroBatcherTest {
+
+	private final MicroBatcher<String, String, String> batcher = new MicroBatcher<>();
+
+	@Test
+	void submit() {
+		final var calls = new CopyOnWriteArrayList<Set<String>>();
+		final var response = new CompletableFuture<Map<String, String>>();
+		final var first = batcher.submit("key", "a", 100, items -> {
+			calls.add(Set.copyOf(items));
+			return response;
+		});
+		final var second = batcher.submit("key", "b", 100, items -> CompletableFuture.failedFuture(new IllegalStateException()));
+		final var same = batcher.submit("key", "a", 100, items -> CompletableFuture.failedFuture(new IllegalStateException()));
+		final var other = batcher.submit("key2", "c", 0, items -> CompletableFuture.completedFuture(Map.of("c", "C")));
+		Assertions.assertSame(first, same);
+		Assertions.assertEquals("C", other.join());
+
+		// Complete the shared call, "b" has no result
+		Assertions.assertFalse(first.isDone());
+		while (batcher.size() > 0 || calls.isEmpty()) {
+			Thread.onSpinWait();
+		}
+		Assertions.assertEquals(List.of(Set.of("a", "b")), calls);
+		response.complete(Map.of("a", "A"));
+		Assertions.assertEquals("A", first.join());
+		Assertions.assertNull(second.join());
+
+		// New batch after the flush
+		Assertions.assertEquals("B", batcher.submit("key", "b", 0, items -> CompletableFuture.completedFuture(Map.of("b", "B"))).join());
+	}
+
+	@Test
+	void submitFailed() {
+		final var failed = batcher.submit("key", "a", 0, items -> {
+			throw new IllegalStateException("failed");
+		});
+		Assertions.assertEquals("failed", Assertions.assertThrows(CompletionException.class, failed::join).getCause().getMessage());
+
+		final var failedAsync = batcher.submit("key", "a", 0, items -> CompletableFuture.failedFuture(new IllegalStateException("failed-async")));
+		Assertions.assertEquals("failed-async", Assertions.assertThrows(CompletionException.class, failedAsync::join).getCause().getMessage());
+		Assertions.assertEquals(0, batcher.size());
+	}
+}
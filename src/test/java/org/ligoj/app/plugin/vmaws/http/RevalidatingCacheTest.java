@@ -0,0 +1,143 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws.http;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Test class of {@link RevalidatingCache}
+ */
+class RevalidatingCacheTest {
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	private final RevalidatingCache<String, String> cache = new RevalidatingCache<>(2);
+
+	private Supplier<CompletableFuture<String>> loader(final String value) {
+		return () -> {
+			loads.incrementAndGet();
+			return CompletableFuture.completedFuture(value);
+		};
+	}
+
+	@Test
+	void get() {
+		Assertions.assertEquals("a", cache.get("key", Long.MAX_VALUE, Long.MAX_VALUE, loader("a")).join());
+
+		// Fresh value, served without load
+		Assertions.assertEquals("a", cache.get("key", Long.MAX_VALUE, Long.MAX_VALUE, loader("b")).join());
+		Assertions.assertEquals(1, loads.get());
+
+		// Stale value, served while revalidated
+		Assertions.assertEquals("a", cache.get("key", 0, Long.MAX_VALUE, loader("b")).join());
+		Assertions.assertEquals("b", cache.peek("key"));
+
+		// Expired value, not served
+		Assertions.assertEquals("c", cache.get("key", 0, 0, loader("c")).join());
+		Assertions.assertEquals(3, loads.get());
+	}
+
+	@Test
+	void load() {
+		cache.load("key", loader("a")).join();
+
+		// A null value is not stored, the previous one is kept
+		Assertions.assertNull(cache.load("key", () -> CompletableFuture.completedFuture(null)).join());
+		Assertions.assertEquals("a", cache.peek("key"));
+
+		// A failed load removes the previous value
+		final var failed = cache.load("key", () -> CompletableFuture.failedFuture(new IllegalStateException("failed")));
+		Assertions.assertEquals("failed",
+				Assertions.assertThrows(CompletionException.class, failed::join).getCause().getMessage());
+		Assertions.assertNull(cache.peek("key"));
+	}
+
+	@Test
+	void loadInFlight() {
+		final var pending = new CompletableFuture<String>();
+		final var load = cache.load("key", () -> pending);
+
+		// The concurrent load is shared
+		Assertions.assertSame(load, cache.load("key", loader("b")));
+		pending.complete("a");
+		Assertions.assertEquals("a", load.join());
+		Assertions.assertEquals(0, loads.get());
+	}
+
+	@Test
+	void size() {
+		cache.load("key1", loader("a")).join();
+		cache.load("key2", loader("b")).join();
+		cache.peek("key1");
+		cache.load("key3", loader("c")).join();
+
+		// The least recently used value is evicted
+		Assertions.assertEquals(2, cache.size());
+		Assertions.assertEquals("a", cache.peek("key1"));
+		Assertions.assertNull(cache.peek("key2"));
+	}
+
+	@Test
+	void invalidate() {
+		final var pending1 = new CompletableFuture<String>();
+		final var pending2 = new CompletableFuture<String>();
+		final var load1 = cache.load("key1", () -> pending1);
+		final var load2 = cache.load("key2", () -> pending2);
+		cache.invalidate("key1");
+
+		// Only the load of the invalidated key is not stored
+		pending1.complete("a");
+		pending2.complete("b");
+		Assertions.assertEquals("a", load1.join());
+		Assertions.assertEquals("b", load2.join());
+		Assertions.assertNull(cache.peek("key1"));
+		Assertions.assertEquals("b", cache.peek("key2"));
+
+		// A load started after the invalidation is stored
+		cache.load("key1", loader("c")).join();
+		Assertions.assertEquals("c", cache.peek("key1"));
+	}
+
+	@Test
+	void invalidateInFlight() {
+		final var pending1 = new CompletableFuture<String>();
+		final var load1 = cache.load("key", () -> pending1);
+		cache.invalidate("key");
+
+		// The next request does not join the load started before the invalidation
+		final var pending2 = new CompletableFuture<String>();
+		final var load2 = cache.get("key", Long.MAX_VALUE, Long.MAX_VALUE, () -> pending2);
+		Assertions.assertNotSame(load1, load2);
+		pending2.complete("b");
+		Assertions.assertEquals("b", load2.join());
+
+		// The load started before the invalidation and completed after is still not stored
+		pending1.complete("a");
+		Assertions.assertEquals("a", load1.join());
+		Assertions.assertEquals("b", cache.peek("key"));
+		Assertions.assertEquals("b", cache.get("key", Long.MAX_VALUE, Long.MAX_VALUE, loader("c")).join());
+		Assertions.assertEquals(0, loads.get());
+	}
+
+	@Test
+	void clear() {
+		final var pending = new CompletableFuture<String>();
+		final var load = cache.load("key1", () -> pending);
+		cache.load("key2", loader("b")).join();
+		cache.clear();
+		Assertions.assertEquals(0, cache.size());
+
+		// A load started before the clear is neither joined nor stored
+		Assertions.assertNotSame(load, cache.load("key1", loader("c")));
+		pending.complete("a");
+		Assertions.assertEquals("a", load.join());
+		Assertions.assertEquals("c", cache.peek("key1"));
+	}
+}
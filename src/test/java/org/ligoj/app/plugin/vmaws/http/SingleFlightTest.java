@@ -0,0 +1,71 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.vmaws.http;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class of {@link SingleFlight}
+ */
+class SingleFlightTest {
+
+	private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+	@Test
+	void execute() {
+		final var calls = new AtomicInteger();
+		final var response = new CompletableFuture<String>();
+		final var first = singleFlight.execute("key", () -> {
+			calls.incrementAndGet();
+			return response;
+		});
+		final var second = singleFlight.execute("key", () -> {
+			calls.incrementAndGet();
+			return CompletableFuture.completedFuture("other");
+		});
+		Assertions.assertEquals(1, singleFlight.size());
+		Assertions.assertSame(first, second);
+		Assertions.assertEquals(1, calls.get());
+
+		// Complete the shared call
+		response.complete("value");
+		Assertions.assertEquals("value", second.join());
+		Assertions.assertEquals(0, singleFlight.size());
+
+		// New call after the completion
+		Assertions.assertEquals("new", singleFlight.execute("key", () -> {
+			calls.incrementAndGet();
+			return CompletableFuture.completedFuture("new");
+		}).join());
+		Assertions.assertEquals(2, calls.get());
+	}
+
+	@Test
+	void executeDistinctKeys() {
+		final var pending = new CompletableFuture<String>();
+		final var first = singleFlight.execute("key1", () -> pending);
+		Assertions.assertEquals("value2", singleFlight.execute("key2", () -> CompletableFuture.completedFuture("value2")).join());
+		Assertions.assertFalse(first.isDone());
+	}
+
+	@Test
+	void executeFailed() {
+		final var failed = singleFlight.execute("key", () -> {
+			throw new IllegalStateException("failed");
+		});
+		Assertions.assertEquals("failed", Assertions.assertThrows(CompletionException.class, failed::join).getCause().getMessage());
+		Assertions.assertEquals(0, singleFlight.size());
+
+		final var response = new CompletableFuture<String>();
+		final var failedAsync = singleFlight.execute("key", () -> response);
+		response.completeExceptionally(new IllegalStateException("failed-async"));
+		Assertions.assertEquals("failed-async", Assertions.assertThrows(CompletionException.class, failedAsync::join).getCause().getMessage());
+		Assertions.assertEquals(0, singleFlight.size());
+	}
+}